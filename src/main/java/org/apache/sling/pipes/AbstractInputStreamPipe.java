@@ -21,23 +21,39 @@ import static org.apache.commons.lang3.StringUtils.EMPTY;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.pipes.internal.PlumberImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Input Stream based pipe, coming from web, from request, resource tree, web
@@ -69,10 +85,89 @@ public abstract class AbstractInputStreamPipe extends BasePipe {
 
     private static final String QUERY_CHAR = "?";
 
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+    private static final String HEADER_CONNECTION = "Connection";
+
+    private static final String ENCODING_GZIP = "gzip";
+
+    /**
+     * connect timeout of remote inputs, in milliseconds
+     */
+    public static final String PN_CONNECT_TIMEOUT = "connectTimeout";
+
+    public static final int CONNECT_TIMEOUT_DEFAULT = 30000;
+
+    /**
+     * read timeout of remote inputs, in milliseconds
+     */
+    public static final String PN_READ_TIMEOUT = "readTimeout";
+
+    public static final int READ_TIMEOUT_DEFAULT = 60000;
+
+    /**
+     * if true (default), remote inputs are requested gzip encoded, and transparently decompressed
+     */
+    public static final String PN_COMPRESSION = "compression";
+
+    /**
+     * if true (default), connections to remote inputs are handed back to the JVM keep-alive pool once read,
+     * otherwise they are closed
+     */
+    public static final String PN_KEEP_ALIVE = "keepAlive";
+
+    /**
+     * if true, remote GET inputs sent with an ETag or Last-Modified header are stored on disk (in the directory, and up
+     * to the size, configured on the plumber implementation), and revalidated with
+     * a conditional request on next fetches, the stored body being read if the server answers 304. Requests sent
+     * with credentials or custom headers are never stored
+     */
+    public static final String PN_HTTP_CACHE = "httpCache";
+
+    /**
+     * size in bytes above which input is spooled to a temporary file, and read through a memory mapped buffer, negative
+     * (default) for never spooling
+     */
+    public static final String PN_SPOOL_THRESHOLD = "spoolThreshold";
+
+    /**
+     * if true, records parsed out of a given source (instantiated expression &amp; properties) are kept for the rest of
+     * the execution, and replayed instead of fetching &amp; parsing the source again. Defaults to false, worth setting
+     * when the pipe follows another one in its container, i.e. when its output is computed again for each upstream item
+     */
+    public static final String PN_MEMOIZE = "memoize";
+
+    /**
+     * maximum number of records memoized for the whole execution, sources going beyond are not memoized
+     */
+    public static final String PN_MEMOIZE_LIMIT = "memoizeLimit";
+
+    public static final int MEMOIZE_LIMIT_DEFAULT = 10000;
+
+    protected static final String INDEX_SUFFIX = "_index";
+
+    private static final String SPOOL_PREFIX = "sling-pipes-";
+
+    private static final String SPOOL_SUFFIX = ".spool";
+
     protected Object binding;
 
     InputStream is;
 
+    Path spoolFile;
+
+    MappedByteBuffer mappedInput;
+
+    HttpURLConnection connection;
+
+    String lastPostData;
+
+    byte[] lastPostBytes;
+
+    Map<String, List<Object[]>> memoizedRecords = new HashMap<>();
+
+    int memoizedCount = 0;
+
     public AbstractInputStreamPipe(Plumber plumber, Resource resource, PipeBindings upperBindings) {
         super(plumber, resource, upperBindings);
         binding = null;
@@ -123,7 +218,8 @@ public abstract class AbstractInputStreamPipe extends BasePipe {
         }
         connection = (HttpURLConnection) new URL(url).openConnection();
         connection.setRequestMethod(METHOD_POST);
-        postData = data.getBytes(StandardCharsets.UTF_8);
+        configure(connection);
+        postData = encodePostData(data);
         int postDataLength = postData.length;
         if (expr.contains(QUERY_CHAR)) {
             connection.setRequestProperty(HEADER_TYPE, "application/x-www-form-urlencoded");
@@ -138,6 +234,33 @@ public abstract class AbstractInputStreamPipe extends BasePipe {
         return connection;
     }
 
+    /**
+     * @param data request body
+     * @return UTF-8 bytes of the body, kept for next requests posting the same body
+     */
+    byte[] encodePostData(String data) {
+        if (!data.equals(lastPostData)) {
+            lastPostData = data;
+            lastPostBytes = data.getBytes(StandardCharsets.UTF_8);
+        }
+        return lastPostBytes;
+    }
+
+    /**
+     * sets timeouts, compression &amp; keep alive settings of a connection that has not been opened yet
+     * @param urlConnection connection to configure
+     */
+    void configure(URLConnection urlConnection) {
+        urlConnection.setConnectTimeout(properties.get(PN_CONNECT_TIMEOUT, CONNECT_TIMEOUT_DEFAULT));
+        urlConnection.setReadTimeout(properties.get(PN_READ_TIMEOUT, READ_TIMEOUT_DEFAULT));
+        if (properties.get(PN_COMPRESSION, true)) {
+            urlConnection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+        }
+        if (!properties.get(PN_KEEP_ALIVE, true)) {
+            urlConnection.setRequestProperty(HEADER_CONNECTION, "close");
+        }
+    }
+
     URLConnection getConnection(String expr) throws IOException {
         boolean usePost = properties.containsKey(METHOD_POST);
         LOGGER.debug("Accessing {} (POST={})", expr, usePost);
@@ -151,30 +274,212 @@ public abstract class AbstractInputStreamPipe extends BasePipe {
         } else {
             URL url = new URL(expr);
             urlConnection = url.openConnection();
+            configure(urlConnection);
             addHeaders(urlConnection);
         }
         return urlConnection;
     }
 
     InputStream getInputStream() throws IOException {
-        String expr = getExpr();
+        return getInputStream(getExpr());
+    }
+
+    InputStream getInputStream(String expr) throws IOException {
         if (expr.startsWith(REMOTE_START) && !properties.get(PN_URL_MODE, URL_MODE_FETCH).equalsIgnoreCase(URL_MODE_AS_IS)) {
             if (StringUtils.isNotBlank(expr)) {
-                return getConnection(expr).getInputStream();
+                return spoolIfNeeded(fetch(expr));
             }
         }
         if (VALID_PATH.matcher(expr).find()) {
             InputStream resourceIs = getInputStreamFromResource(expr);
             if (resourceIs != null) {
-                return resourceIs;
+                return spoolIfNeeded(resourceIs);
             }
         }
         if (getBindings().getBindings().get(BINDING_IS) != null) {
-            return (InputStream)getBindings().getBindings().get(BINDING_IS);
+            return spoolIfNeeded((InputStream)getBindings().getBindings().get(BINDING_IS));
         }
         return new ByteArrayInputStream(expr.getBytes(StandardCharsets.UTF_8));
     }
 
+    /**
+     * fetches a remote input, revalidating its cached copy if any
+     * @param expr url of the input
+     * @return decoded response body
+     * @throws IOException in case input can't be fetched
+     */
+    InputStream fetch(String expr) throws IOException {
+        URLConnection urlConnection = getConnection(expr);
+        if (!(urlConnection instanceof HttpURLConnection)) {
+            return urlConnection.getInputStream();
+        }
+        connection = (HttpURLConnection) urlConnection;
+        boolean cached = properties.get(PN_HTTP_CACHE, false) && plumber instanceof PlumberImpl
+                && !properties.containsKey(METHOD_POST) && !hasCredentialsOrHeaders();
+        HttpInputCache cache = cached ? new HttpInputCache(((PlumberImpl) plumber).getHttpCacheDirectory(),
+                ((PlumberImpl) plumber).getHttpCacheMaxSize()) : null;
+        String key = cached ? getSourceKey(expr) : null;
+        HttpInputCache.Entry entry = cached ? cache.get(key) : null;
+        try {
+            if (entry != null) {
+                entry.addConditions(connection);
+                if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    LOGGER.debug("{} not modified, reading cached copy", expr);
+                    IOUtils.closeQuietly(connection.getInputStream());
+                    return entry.open();
+                }
+                entry.close();
+            }
+            InputStream body = connection.getInputStream();
+            if (ENCODING_GZIP.equalsIgnoreCase(connection.getContentEncoding())) {
+                body = new GZIPInputStream(body);
+            }
+            return cached ? cache.store(key, connection, body) : body;
+        } catch (IOException e) {
+            if (entry != null) {
+                entry.close();
+            }
+            connection.disconnect();
+            connection = null;
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if the request is sent with basic authentication or custom headers, that may hold credentials
+     */
+    boolean hasCredentialsOrHeaders() {
+        return getBindings().getBindings().get(BASIC_AUTH_BINDINGS) != null
+                || properties.keySet().stream().anyMatch(k -> k.startsWith(HEADER_PREFIX));
+    }
+
+    /**
+     * @param input fetched input stream
+     * @return spooled input if a spool threshold is configured, given input otherwise
+     * @throws IOException in case input can't be spooled
+     */
+    InputStream spoolIfNeeded(InputStream input) throws IOException {
+        long spoolThreshold = getSpoolThreshold();
+        return spoolThreshold >= 0 ? spool(input, spoolThreshold) : input;
+    }
+
+    /**
+     * @return size in bytes above which input is spooled, negative for never spooling
+     */
+    protected long getSpoolThreshold() {
+        return properties.get(PN_SPOOL_THRESHOLD, -1L);
+    }
+
+    /**
+     * Reads input up to the threshold in memory, and spills it to a temporary file if it goes beyond
+     * @param input input stream to read, closed once spooled
+     * @param threshold size in bytes above which input is spooled on disk
+     * @return input stream over the spooled input, mapped in memory if file is not bigger than 2GB
+     * @throws IOException in case input can't be read or spooled
+     */
+    InputStream spool(InputStream input, long threshold) throws IOException {
+        try {
+            ByteArrayOutputStream head = new ByteArrayOutputStream();
+            IOUtils.copyLarge(input, head, 0, threshold + 1);
+            if (head.size() <= threshold) {
+                return new ByteArrayInputStream(head.toByteArray());
+            }
+            spoolFile = Files.createTempFile(SPOOL_PREFIX, SPOOL_SUFFIX);
+            try (OutputStream output = Files.newOutputStream(spoolFile)) {
+                head.writeTo(output);
+                IOUtils.copyLarge(input, output);
+            }
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+        LOGGER.debug("input of {} spooled to {}", getName(), spoolFile);
+        try (FileChannel channel = FileChannel.open(spoolFile, StandardOpenOption.READ)) {
+            if (channel.size() <= Integer.MAX_VALUE) {
+                mappedInput = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return new ByteBufferInputStream(mappedInput.duplicate());
+            }
+        }
+        return new BufferedInputStream(Files.newInputStream(spoolFile));
+    }
+
+    /**
+     * @return read only memory mapped view of the current input, if it has been spooled, null otherwise. Parsers can
+     * use it for random or repeated access to the input bytes without copying them
+     */
+    protected ByteBuffer getMappedInput() {
+        return mappedInput != null ? mappedInput.asReadOnlyBuffer() : null;
+    }
+
+    /**
+     * @return temporary file the current input has been spooled to, null if it has not been spooled. Parsers can
+     * read it at random, whatever its size, until the input is released
+     */
+    protected Path getSpoolFile() {
+        return spoolFile;
+    }
+
+    /**
+     * closes current input stream, and removes its spool file if any
+     */
+    void releaseInput() {
+        IOUtils.closeQuietly(is);
+        is = null;
+        if (connection != null && !properties.get(PN_KEEP_ALIVE, true)) {
+            connection.disconnect();
+        }
+        connection = null;
+        mappedInput = null;
+        if (spoolFile != null) {
+            try {
+                Files.deleteIfExists(spoolFile);
+            } catch (IOException e) {
+                LOGGER.warn("unable to delete spool file {}", spoolFile, e);
+            }
+            spoolFile = null;
+        }
+    }
+
+    /**
+     * input stream reading a byte buffer
+     */
+    static class ByteBufferInputStream extends InputStream {
+        final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
     @Override
     public Object getOutputBinding() {
         return binding;
@@ -182,11 +487,132 @@ public abstract class AbstractInputStreamPipe extends BasePipe {
 
     public abstract Iterator<Resource> getOutput(InputStream inputStream);
 
+    /**
+     * @param expr instantiated expression
+     * @return key identifying the fetched source &amp; how it is parsed, i.e. with all other (instantiated) properties
+     * like value path or separator, null if it should not be memoized
+     */
+    String getMemoizationKey(String expr) {
+        if (!properties.get(PN_MEMOIZE, false) || properties.containsKey(METHOD_POST)) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(getSourceKey(expr));
+        properties.keySet().stream()
+                .filter(k -> !PN_EXPR.equals(k) && !k.startsWith(HEADER_PREFIX))
+                .sorted()
+                .forEach(k -> {
+                    Object value = properties.get(k);
+                    key.append('\n').append(k).append('=')
+                            .append(value instanceof String ? getBindings().instantiateExpression((String) value)
+                                    : value instanceof Object[] ? Arrays.toString((Object[]) value) : value);
+                });
+        return key.toString();
+    }
+
+    /**
+     * @param expr instantiated expression
+     * @return key identifying the fetched source: expression, headers &amp; credentials
+     */
+    String getSourceKey(String expr) {
+        StringBuilder key = new StringBuilder(expr);
+        properties.keySet().stream()
+                .filter(k -> k.startsWith(HEADER_PREFIX))
+                .sorted()
+                .forEach(k -> key.append('\n').append(k).append('=')
+                        .append(getBindings().instantiateExpression(properties.get(k, String.class))));
+        Object basicAuth = getBindings().getBindings().get(BASIC_AUTH_BINDINGS);
+        if (basicAuth != null) {
+            key.append('\n').append(BASIC_AUTH_BINDINGS).append('=').append(basicAuth);
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param binding output binding of a record
+     * @return binding to be memoized, a copy if the binding is a view that the pipe reuses for next record
+     */
+    protected Object copyBinding(Object binding) {
+        return binding;
+    }
+
+    /**
+     * records output of a source, and memoizes it once fully iterated, if it fits in the memoization limit
+     */
+    class MemoizingIterator implements Iterator<Resource> {
+        final String key;
+        final Iterator<Resource> output;
+        final int limit;
+        List<Object[]> records = new ArrayList<>();
+
+        MemoizingIterator(String key, Iterator<Resource> output, int limit) {
+            this.key = key;
+            this.output = output;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean hasNext = output.hasNext();
+            if (!hasNext && records != null) {
+                memoizedRecords.put(key, records);
+                memoizedCount += records.size();
+                records = null;
+            }
+            return hasNext;
+        }
+
+        @Override
+        public Resource next() {
+            Resource resource = output.next();
+            if (records != null) {
+                if (memoizedCount + records.size() < limit) {
+                    records.add(new Object[]{copyBinding(binding), getBindings().getBindings().get(getName() + INDEX_SUFFIX)});
+                } else {
+                    LOGGER.debug("{} has too many records to be memoized", key);
+                    records = null;
+                }
+            }
+            return resource;
+        }
+    }
+
+    /**
+     * @param records memoized records
+     * @return output replaying those records
+     */
+    Iterator<Resource> replay(List<Object[]> records) {
+        final Resource input = getInput();
+        final Iterator<Object[]> recordIterator = records.iterator();
+        return new Iterator<Resource>() {
+            @Override
+            public boolean hasNext() {
+                return recordIterator.hasNext();
+            }
+
+            @Override
+            public Resource next() {
+                Object[] rec = recordIterator.next();
+                binding = rec[0];
+                getBindings().addBinding(getName() + INDEX_SUFFIX, rec[1]);
+                return input;
+            }
+        };
+    }
+
     @Override
     public Iterator<Resource> computeOutput() {
         try {
-            is = getInputStream();
-            return getOutput(is);
+            releaseInput();
+            String expr = getExpr();
+            String key = getMemoizationKey(expr);
+            if (key != null && memoizedRecords.containsKey(key)) {
+                LOGGER.debug("replaying memoized records of {}", expr);
+                return replay(memoizedRecords.get(key));
+            }
+            is = getInputStream(expr);
+            Iterator<Resource> output = getOutput(is);
+            int limit = properties.get(PN_MEMOIZE_LIMIT, MEMOIZE_LIMIT_DEFAULT);
+            return key != null && memoizedCount < limit ? new MemoizingIterator(key, output, limit) : output;
         }  catch (IOException e) {
             throw new IllegalArgumentException(e);
         }
@@ -195,6 +621,6 @@ public abstract class AbstractInputStreamPipe extends BasePipe {
     @Override
     public void after() {
         super.after();
-        IOUtils.closeQuietly(is);
+        releaseInput();
     }
 }
@@ -16,6 +16,7 @@
  */
 package org.apache.sling.pipes;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.resource.Resource;
 
 import javax.management.openmbean.CompositeData;
@@ -37,6 +38,11 @@ public class ExecutionResult {
 
     private static final CompositeType COMPOSITE_TYPE = getType();
 
+    /**
+     * maximum length of the output kept in the composite data view
+     */
+    public static final int SUMMARY_MAX_LENGTH = 4096;
+
     static CompositeType getType() {
         try {
             return new CompositeType(ExecutionResult.class.getName(),
@@ -100,18 +106,26 @@ public class ExecutionResult {
         return writer.size;
     }
 
+    /**
+     * @return number of errors reported so far
+     */
+    public long getNbErrors() {
+        return writer.nbErrors;
+    }
+
     @Override
     public String toString() {
         return writer.toString();
     }
 
     /**
-     * @return Composite data view of that result. With size of the execution, and string output (can be json, csv, ...)
+     * @return Composite data view of that result. With size of the execution, and string output (can be json, csv, ...),
+     * abbreviated to {@link #SUMMARY_MAX_LENGTH} characters
      * @throws OpenDataException in case something went wrong building up the composite data
      */
     public CompositeData asCompositeData() throws OpenDataException {
         if (data == null) {
-            data = new CompositeDataSupport(COMPOSITE_TYPE, JMX_NAMES, new Object[]{size(), toString()});
+            data = new CompositeDataSupport(COMPOSITE_TYPE, JMX_NAMES, new Object[]{size(), StringUtils.abbreviate(toString(), SUMMARY_MAX_LENGTH)});
         }
         return data;
     }
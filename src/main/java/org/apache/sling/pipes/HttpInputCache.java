@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Disk cache of remote inputs, keyed by source (url &amp; headers), and validated against the remote server
+ * with the ETag and Last-Modified headers it sent along with the cached body.
+ * Each version of a body is stored in its own owner only file, that the validators file of its source, atomically
+ * replaced, refers to. Least recently used bodies are evicted once the cache goes beyond its max size.
+ */
+class HttpInputCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpInputCache.class);
+
+    static final String HEADER_ETAG = "ETag";
+    static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String KEY_BODY = "body";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".properties";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String OWNER_ONLY = "rwx------";
+
+    private final Path directory;
+
+    private final long maxSize;
+
+    /**
+     * @param directory directory where bodies &amp; validators are stored, created (owner only) if needed
+     * @param maxSize max size in bytes of stored bodies
+     */
+    HttpInputCache(Path directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param key source key
+     * @return cached entry for that key, with its body already opened, null if there is none
+     */
+    Entry get(String key) {
+        Path meta = directory.resolve(hash(key) + META_SUFFIX);
+        if (Files.isRegularFile(meta)) {
+            Properties validators = new Properties();
+            try (InputStream input = Files.newInputStream(meta)) {
+                validators.load(input);
+                Path body = directory.resolve(validators.getProperty(KEY_BODY, ""));
+                InputStream stream = new BufferedInputStream(Files.newInputStream(body));
+                Files.setLastModifiedTime(body, FileTime.fromMillis(System.currentTimeMillis()));
+                return new Entry(stream, validators.getProperty(HEADER_ETAG), validators.getProperty(HEADER_LAST_MODIFIED));
+            } catch (NoSuchFileException e) {
+                LOGGER.debug("cache entry {} has been evicted", meta);
+            } catch (IOException e) {
+                LOGGER.warn("unable to read cache entry {}", meta, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * stores a response body, if the server sent validators for it
+     * @param key source key
+     * @param connection connection the body has been read from
+     * @param input decoded response body, closed once stored
+     * @return input stream reading the stored body, or given input if nothing is stored
+     * @throws IOException in case the body can't be read or stored
+     */
+    InputStream store(String key, URLConnection connection, InputStream input) throws IOException {
+        String etag = connection.getHeaderField(HEADER_ETAG);
+        String lastModified = connection.getHeaderField(HEADER_LAST_MODIFIED);
+        if (etag == null && lastModified == null) {
+            return input;
+        }
+        String name = hash(key);
+        createDirectory();
+        Path body = Files.createTempFile(directory, name + "-", BODY_SUFFIX);
+        Path tmp = null;
+        try {
+            try (OutputStream output = Files.newOutputStream(body)) {
+                IOUtils.copyLarge(input, output);
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+            Properties validators = new Properties();
+            validators.setProperty(KEY_BODY, body.getFileName().toString());
+            if (etag != null) {
+                validators.setProperty(HEADER_ETAG, etag);
+            }
+            if (lastModified != null) {
+                validators.setProperty(HEADER_LAST_MODIFIED, lastModified);
+            }
+            tmp = Files.createTempFile(directory, name, TMP_SUFFIX);
+            try (OutputStream output = Files.newOutputStream(tmp)) {
+                validators.store(output, null);
+            }
+            InputStream stored = new BufferedInputStream(Files.newInputStream(body));
+            Path meta = directory.resolve(name + META_SUFFIX);
+            String previous = readBodyName(meta);
+            Files.move(tmp, meta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (previous != null && !previous.equals(body.getFileName().toString())) {
+                Files.deleteIfExists(directory.resolve(previous));
+            }
+            evict();
+            return stored;
+        } catch (IOException e) {
+            Files.deleteIfExists(body);
+            throw e;
+        } finally {
+            if (tmp != null) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    /**
+     * creates the cache directory, readable by the owner only if the file system supports it
+     * @throws IOException in case directory can't be created
+     */
+    void createDirectory() throws IOException {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            FileAttribute<?> ownerOnly = PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(OWNER_ONLY));
+            Files.createDirectories(directory, ownerOnly);
+        } else {
+            Files.createDirectories(directory);
+        }
+    }
+
+    /**
+     * @param meta validators file
+     * @return name of the body file it refers to, null if there is none
+     */
+    private String readBodyName(Path meta) {
+        if (Files.isRegularFile(meta)) {
+            Properties validators = new Properties();
+            try (InputStream input = Files.newInputStream(meta)) {
+                validators.load(input);
+                return validators.getProperty(KEY_BODY);
+            } catch (IOException e) {
+                LOGGER.debug("unable to read previous cache entry {}", meta, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * removes least recently used bodies until stored bodies fit in the max size, validators of removed bodies
+     * being then ignored, and overwritten on next store
+     */
+    void evict() {
+        List<Path> bodies = new ArrayList<>();
+        long size = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + BODY_SUFFIX)) {
+            for (Path body : stream) {
+                bodies.add(body);
+                size += Files.size(body);
+            }
+            if (size > maxSize) {
+                bodies.sort(Comparator.comparing(HttpInputCache::lastModified));
+                for (Path body : bodies) {
+                    if (size <= maxSize) {
+                        break;
+                    }
+                    long bodySize = Files.size(body);
+                    if (Files.deleteIfExists(body)) {
+                        size -= bodySize;
+                        LOGGER.debug("evicted {} from http cache", body);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("unable to evict http cache entries", e);
+        }
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * @param key source key
+     * @return hex encoded SHA-256 of the key
+     */
+    static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * cached body, with the validators to send for revalidating it
+     */
+    static class Entry implements AutoCloseable {
+        final InputStream body;
+        final String etag;
+        final String lastModified;
+
+        Entry(InputStream body, String etag, String lastModified) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * sets conditional headers on a connection that has not been opened yet
+         * @param connection connection to the remote source
+         */
+        void addConditions(URLConnection connection) {
+            if (etag != null) {
+                connection.setRequestProperty(HEADER_IF_NONE_MATCH, etag);
+            }
+            if (lastModified != null) {
+                connection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, lastModified);
+            }
+        }
+
+        /**
+         * @return input stream reading the cached body
+         */
+        InputStream open() {
+            return body;
+        }
+
+        /**
+         * releases the cached body, when it is not used
+         */
+        @Override
+        public void close() {
+            IOUtils.closeQuietly(body);
+        }
+    }
+}
@@ -30,10 +30,15 @@ import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
 
 import static org.apache.commons.lang3.StringUtils.EMPTY;
 import static org.apache.sling.pipes.CommandUtil.stringToMap;
@@ -74,8 +79,68 @@ public abstract class OutputWriter {
 
     public static final String PARAM_WRITER = "writer";
 
+    public static final String PARAM_SAMPLING = "sampling";
+
+    public static final String KEY_SAMPLING = PARAM_SAMPLING;
+
+    /**
+     * strategies deciding which items of the output, bounded by max, are written
+     */
+    public enum Sampling {
+        /**
+         * first items, written as they come (default)
+         */
+        FIRST,
+        /**
+         * uniformly random sample of the whole output, written when output ends
+         */
+        RESERVOIR,
+        /**
+         * last items, written when output ends
+         */
+        LAST;
+
+        /**
+         * @param value case insensitive name of the strategy
+         * @return corresponding strategy
+         */
+        public static Sampling fromString(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("%s is not a valid sampling, should be one of %s", value, Arrays.toString(values())), e);
+            }
+        }
+    }
+
+    /**
+     * item kept by a sampling strategy, with its custom outputs computed at the time it was written
+     */
+    private static class Sample {
+        final long index;
+        final Resource resource;
+        final Map<String, String> values;
+
+        Sample(long index, Resource resource, Map<String, String> values) {
+            this.index = index;
+            this.resource = resource;
+            this.values = values;
+        }
+    }
+
+    protected Sampling sampling;
+
+    private List<Sample> samples;
+
+    private Map<String, String> sampledValues;
+
     protected Map<String, Object> customOutputs;
 
+    /**
+     * custom outputs expressions, compiled once the pipe is set
+     */
+    protected Map<String, Supplier<Object>> compiledOutputs;
+
     protected List<String> errors = new ArrayList<>();
 
     /**
@@ -99,8 +164,12 @@ public abstract class OutputWriter {
         if (StringUtils.isNotBlank(writerParam)){
             customOutputs = stringToMap(writerParam, PipeBindings::embedAsScript);
         }
-        setWriter(response.getWriter());
+        String samplingParam = request.getParameter(PARAM_SAMPLING);
+        if (StringUtils.isNotBlank(samplingParam)) {
+            setSampling(Sampling.fromString(samplingParam));
+        }
         initResponse(response);
+        setWriter(response.getWriter());
         starts();
     }
 
@@ -133,6 +202,20 @@ public abstract class OutputWriter {
         }
     }
 
+    /**
+     * @param sampling strategy deciding which items are written
+     */
+    public void setSampling(Sampling sampling) {
+        this.sampling = sampling;
+    }
+
+    /**
+     * @return sampling strategy in use
+     */
+    public Sampling getSampling() {
+        return sampling != null ? sampling : Sampling.FIRST;
+    }
+
     /**x
      * Set the writer
      * @param writer writer on which to write output
@@ -146,8 +229,64 @@ public abstract class OutputWriter {
      * @param resource resource that will be written
      */
     public void write(Resource resource) {
-        if (size++ < max) {
-            writeItem(resource);
+        long index = size++;
+        Sampling strategy = getSampling();
+        if (strategy == Sampling.FIRST) {
+            if (index < max) {
+                writeItem(resource);
+            }
+        } else if (max > 0) {
+            sample(strategy, index, resource);
+        }
+    }
+
+    /**
+     * keeps at most max items, replacing a random one (reservoir) or the oldest one (last)
+     * @param strategy sampling strategy
+     * @param index index of the item in the whole output
+     * @param resource resource being written
+     */
+    private void sample(Sampling strategy, long index, Resource resource) {
+        if (samples == null) {
+            samples = new ArrayList<>();
+        }
+        if (index < max) {
+            samples.add(snapshot(index, resource));
+        } else {
+            long slot = strategy == Sampling.LAST ? index % max : ThreadLocalRandom.current().nextLong(index + 1);
+            if (slot < max) {
+                samples.set((int) slot, snapshot(index, resource));
+            }
+        }
+    }
+
+    private Sample snapshot(long index, Resource resource) {
+        Map<String, String> values = null;
+        if (customOutputs != null) {
+            values = new HashMap<>();
+            for (String key : customOutputs.keySet()) {
+                values.put(key, computeValue(key));
+            }
+        }
+        return new Sample(index, resource, values);
+    }
+
+    /**
+     * writes, in output order, the items kept by a reservoir or last sampling. Writers should call this
+     * at the beginning of {@link #ends()}
+     */
+    protected void writeSamples() {
+        if (samples != null) {
+            samples.sort(Comparator.comparingLong(sample -> sample.index));
+            try {
+                for (Sample sample : samples) {
+                    sampledValues = sample.values;
+                    writeItem(sample.resource);
+                }
+            } finally {
+                sampledValues = null;
+                samples = null;
+            }
         }
     }
 
@@ -191,6 +330,12 @@ public abstract class OutputWriter {
      */
     public void setPipe(Pipe pipe) {
         this.pipe = pipe;
+        if (sampling == null) {
+            String pipeSampling = pipe.getResource().getValueMap().get(PARAM_SAMPLING, String.class);
+            if (StringUtils.isNotBlank(pipeSampling)) {
+                setSampling(Sampling.fromString(pipeSampling));
+            }
+        }
         Resource outputs = pipe.getResource().getChild(PARAM_WRITER);
         if (customOutputs == null && outputs != null ){
             customOutputs = new HashMap<>();
@@ -199,12 +344,25 @@ public abstract class OutputWriter {
                 customOutputs.remove(ignoredKey);
             }
         }
+        compiledOutputs = null;
+        if (customOutputs != null) {
+            compiledOutputs = new HashMap<>();
+            for (Map.Entry<String, Object> entry : customOutputs.entrySet()) {
+                if (entry.getValue() instanceof String) {
+                    compiledOutputs.put(entry.getKey(), pipe.getBindings().compile((String) entry.getValue()));
+                }
+            }
+        }
     }
 
     protected String computeValue(String key) {
+        if (sampledValues != null) {
+            return sampledValues.getOrDefault(key, EMPTY);
+        }
         String value = EMPTY;
         try {
-            Object o = pipe.getBindings().instantiateObject((String) customOutputs.get(key));
+            Supplier<Object> output = compiledOutputs != null ? compiledOutputs.get(key) : null;
+            Object o = output != null ? output.get() : pipe.getBindings().instantiateObject((String) customOutputs.get(key));
             if (o != null) {
                 if (o instanceof Calendar) {
                     Instant i = ((Calendar)o).toInstant();
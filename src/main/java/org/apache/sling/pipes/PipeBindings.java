@@ -36,6 +36,7 @@ import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -263,6 +264,31 @@ public class PipeBindings {
         return evaluate(expr);
     }
 
+    /**
+     * Compiles an expression once, for it to be instantiated repeatedly against current bindings. With internal engine,
+     * template is computed once and its parsed expression is kept by the engine's cache, expressions are evaluated as
+     * by {@link #instantiateObject(String)} otherwise
+     * @param expr ecma expression
+     * @return supplier of the instantiated object
+     */
+    public Supplier<Object> compile(String expr) {
+        String computed = computeTemplateExpression(expr);
+        if (computed == null) {
+            return () -> expr;
+        }
+        if (getEngine() != null) {
+            return () -> evaluate(expr);
+        }
+        Bindings bindings = getBindings();
+        return () -> {
+            try {
+                return plumber.evaluate(computed, bindings);
+            } catch (JexlException e) {
+                throw new IllegalArgumentException(e);
+            }
+        };
+    }
+
     /**
      * return registered bindings
      * @return bindings
@@ -20,6 +20,7 @@ import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.event.jobs.Job;
 import org.osgi.annotation.versioning.ProviderType;
 
+import java.io.Writer;
 import java.util.Map;
 
 /**
@@ -106,6 +107,13 @@ public interface PipeBuilder {
      */
     PipeBuilder json(String expr);
 
+    /**
+     * attach a json lines pipe to the current context
+     * @param expr json lines expr or URL or path in the resource tree
+     * @return updated instance of PipeBuilder
+     */
+    PipeBuilder jsonl(String expr);
+
     /**
      * attach a Regexp pipe to the current context
      * @param expr text expr or URL or path in the resource tree
@@ -296,7 +304,17 @@ public interface PipeBuilder {
     Pipe build(String path) throws PersistenceException;
 
     /**
-     * builds and run configured pipe
+     * makes following run executions persist the pipe configuration, as {@link #build()} does, before executing it.
+     * Otherwise configuration is only built in memory, and nothing is written in the repository for it
+     * @return updated instance of PipeBuilder
+     */
+    PipeBuilder persistent();
+
+    /**
+     * builds and run configured pipe. Unless {@link #persistent()} has been called, the configuration is only built in
+     * memory for that execution: nothing is written under <code>/var/pipes</code>, so the pipe can not be referred to
+     * (or its status read) by path afterwards. The same goes for the other run variants, except
+     * {@link #runAsync(Map)} that always persists the configuration
      * @return set of resource path, output of the pipe execution
      */
     ExecutionResult run();
@@ -308,6 +326,14 @@ public interface PipeBuilder {
      */
     ExecutionResult run(Map<String, Object> bindings);
 
+    /**
+     * builds and run configured pipe, streaming its whole output as json to the given writer
+     * @param bindings additional bindings, can be null
+     * @param writer writer the output is written &amp; periodically flushed to
+     * @return result of the execution, whose string value is only a summary of the output
+     */
+    ExecutionResult run(Map<String, Object> bindings, Writer writer);
+
     /**
      * allow execution of a pipe, with more parameter
      * @param bindings additional bindings, should be key/value format
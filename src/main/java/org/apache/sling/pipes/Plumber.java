@@ -106,6 +106,7 @@ public interface Plumber {
      *
      * @param type      resource type of the pipe to register
      * @param pipeClass class of the pipe to register
+     * @throws IllegalArgumentException if pipe class has no accessible (Plumber, Resource, PipeBindings) constructor
      */
     void registerPipe(String type, Class<? extends BasePipe> pipeClass);
 
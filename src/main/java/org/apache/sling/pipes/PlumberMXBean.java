@@ -16,8 +16,21 @@
  */
 package org.apache.sling.pipes;
 
+import org.osgi.annotation.versioning.ProviderType;
+
+@ProviderType
 public interface PlumberMXBean {
 
     void refreshMonitoredPipes();
 
+    /**
+     * @return number of resources removed by the last purge of old pipe instances
+     */
+    long getLastPurgeDeletedResources();
+
+    /**
+     * @return duration, in milliseconds, of the last purge of old pipe instances
+     */
+    long getLastPurgeDuration();
+
 }
@@ -33,7 +33,7 @@ public class AbstractPlumberServlet extends SlingAllMethodsServlet {
      * @throws IOException bad handling of I/O streams,
      */
     OutputWriter getWriter(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
-        OutputWriter[] candidates = new OutputWriter[]{new CsvWriter(), new JsonWriter()};
+        OutputWriter[] candidates = new OutputWriter[]{new CsvWriter(), new NdJsonWriter(), new JsonWriter()};
         for (OutputWriter candidate : candidates) {
             if (candidate.handleRequest(request)) {
                 candidate.init(request, response);
@@ -42,4 +42,31 @@ public class AbstractPlumberServlet extends SlingAllMethodsServlet {
         }
         return null;
     }
+
+    /**
+     * Wraps the response so that its output gets gzipped, if the client accepts it
+     * @param request current request
+     * @param response original response
+     * @return compressing response, or original one if client does not accept gzip
+     */
+    SlingHttpServletResponse compress(SlingHttpServletRequest request, SlingHttpServletResponse response) {
+        return GzipResponse.accepts(request) ? new GzipResponse(response) : response;
+    }
+
+    /**
+     * Ends compressed output, if the response has been wrapped by {@link #compress(SlingHttpServletRequest, SlingHttpServletResponse)}:
+     * finishes it if the response has been fully written, aborts it otherwise
+     * @param response response that has been written
+     * @param succeeded true if the response has been fully written
+     * @throws IOException bad handling of I/O streams
+     */
+    void finish(SlingHttpServletResponse response, boolean succeeded) throws IOException {
+        if (response instanceof GzipResponse) {
+            if (succeeded) {
+                ((GzipResponse) response).finish();
+            } else {
+                ((GzipResponse) response).abort();
+            }
+        }
+    }
 }
@@ -26,20 +26,25 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
 import java.security.AccessControlException;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.request.RequestParameter;
 import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.servlets.ServletResolverConstants;
@@ -68,6 +73,8 @@ import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_ACCEPTABLE;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 import static org.apache.commons.lang3.StringUtils.EMPTY;
+import static org.apache.sling.api.resource.ResourceResolver.PROPERTY_RESOURCE_TYPE;
+import static org.apache.sling.pipes.BasePipe.SLASH;
 import static org.apache.sling.pipes.CommandUtil.keyValuesToArray;
 import static org.apache.sling.pipes.CommandUtil.writeToMap;
 
@@ -79,7 +86,8 @@ import javax.servlet.http.HttpServletResponse;
     ServletResolverConstants.SLING_SERVLET_RESOURCE_TYPES + "=" + CommandExecutorImpl.RESOURCE_TYPE,
     ServletResolverConstants.SLING_SERVLET_METHODS + "=POST",
     ServletResolverConstants.SLING_SERVLET_EXTENSIONS + "=json",
-    ServletResolverConstants.SLING_SERVLET_EXTENSIONS + "=csv"
+    ServletResolverConstants.SLING_SERVLET_EXTENSIONS + "=csv",
+    ServletResolverConstants.SLING_SERVLET_EXTENSIONS + "=ndjson"
 })
 @Designate(ocd = CommandExecutorImpl.Configuration.class)
 public class CommandExecutorImpl extends AbstractPlumberServlet implements CommandExecutor {
@@ -88,8 +96,12 @@ public class CommandExecutorImpl extends AbstractPlumberServlet implements Comma
     static final String REQ_PARAM_FILE = "pipe_cmdfile";
     static final String REQ_PARAM_CMD = "pipe_cmd";
     static final String REQ_PARAM_HELP = "pipe_help";
+    static final String REQ_PARAM_BATCH = "pipe_batch";
+    static final String REQ_PARAM_PARALLEL = "pipe_parallel";
     static final String CMD_LINE_PREFIX = "cmd_line_";
+    static final String BATCH_STEP_PREFIX = "batch_";
     static final String PN_DESCRIPTION = "commandParsed";
+    static final int DEFAULT_PARSE_CACHE_SIZE = 256;
 
     static final String TOKEN = "token";
     static final String WHITE_SPACE_SEPARATOR = "[\\s\\h]";
@@ -126,6 +138,16 @@ public class CommandExecutorImpl extends AbstractPlumberServlet implements Comma
     Map<String, Method> methodMap;
     Map<String, PipeExecutor> executorMap;
 
+    /**
+     * tokens of already parsed commands, resolved against the pipe builder api, per command
+     */
+    Map<String, List<Token>> parseCache = lruMap(DEFAULT_PARSE_CACHE_SIZE);
+
+    /**
+     * path of the pipe persisted for a command, per user &amp; command
+     */
+    Map<String, String> persistedCommands = lruMap(DEFAULT_PARSE_CACHE_SIZE);
+
     String help;
 
     @Reference
@@ -140,12 +162,31 @@ public class CommandExecutorImpl extends AbstractPlumberServlet implements Comma
         methodMap = null;
         executorMap = null;
         help = null;
+        parseCache = lruMap(configuration.parseCacheSize());
+        persistedCommands = lruMap(configuration.parseCacheSize());
+    }
+
+    /**
+     * @param size max size of the map
+     * @param <T> type of the values
+     * @return synchronized map evicting its least recently used entries beyond given size
+     */
+    static <T> Map<String, T> lruMap(int size) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                return size() > size;
+            }
+        });
     }
 
     @ObjectClassDefinition(name="Apache Sling Pipes : Command Executor Configuration")
     public @interface Configuration {
         @AttributeDefinition(description="Enable command executor to be executed from servlet, if not, sends 503")
         boolean enabled() default true;
+
+        @AttributeDefinition(description="Number of parsed commands (and of their persisted pipes) kept for being executed again")
+        int parseCacheSize() default DEFAULT_PARSE_CACHE_SIZE;
     }
 
     boolean isBlankLine(String line) {
@@ -203,8 +244,9 @@ public class CommandExecutorImpl extends AbstractPlumberServlet implements Comma
     protected void executeCommands(@NotNull SlingHttpServletRequest request, @NotNull SlingHttpServletResponse response) throws IOException {
         PrintWriter writer = response.getWriter();
         String currentCommand = null;
+        ResourceResolver resolver = request.getResourceResolver();
+        Map<String, Pipe> commandPipes = new LinkedHashMap<>();
         try {
-            ResourceResolver resolver = request.getResourceResolver();
             Map<String, Object> bindings = plumber.getBindingsFromRequest(request, true);
             List<String> cmds = getCommandList(request, bindings);
             if (cmds.isEmpty()) {
@@ -218,19 +260,26 @@ public class CommandExecutorImpl extends AbstractPlumberServlet implements Comma
             }
             pipeWriter.disableAutoClose();
             pipeWriter.init(request, response);
+            boolean batch = Boolean.parseBoolean(request.getParameter(REQ_PARAM_BATCH));
+            List<Pipe> pipes = new ArrayList<>();
             for (String command : cmds) {
                 if (StringUtils.isNotBlank(command)) {
                     currentCommand = command;
-                    PipeBuilder pipeBuilder = parse(resolver, command);
-                    Pipe pipe = pipeBuilder.build();
+                    Pipe pipe = getCommandPipe(resolver, command);
+                    commandPipes.put(command, pipe);
                     bindings.put(CMD_LINE_PREFIX + idxLine++, pipe.getResource().getPath());
-                    ModifiableValueMap root = pipe.getResource().adaptTo(ModifiableValueMap.class);
-                    if (root != null) {
-                        root.put(PN_DESCRIPTION, command);
+                    if (batch) {
+                        pipes.add(pipe);
+                    } else {
+                        plumber.execute(resolver, pipe, bindings, pipeWriter, true);
                     }
-                    plumber.execute(resolver, pipe, bindings, pipeWriter, true);
                 }
             }
+            if (!pipes.isEmpty()) {
+                currentCommand = "batch of " + pipes.size() + " commands";
+                int threads = NumberUtils.toInt(request.getParameter(REQ_PARAM_PARALLEL), 1);
+                plumber.execute(resolver, buildBatch(resolver, pipes, threads), bindings, pipeWriter, true);
+            }
             pipeWriter.ends();
         }  catch (IllegalAccessException | InvocationTargetException e) {
             writer.println("Error executing " + currentCommand);
@@ -245,26 +294,34 @@ public class CommandExecutorImpl extends AbstractPlumberServlet implements Comma
             response.setStatus(SC_NOT_ACCEPTABLE);
             response.sendError(SC_NOT_ACCEPTABLE);
             writer.println(help());
+        } finally {
+            commandPipes.forEach((command, pipe) -> releaseCommandPipe(resolver, command, pipe));
         }
     }
 
     @Override
     protected void doPost(@NotNull SlingHttpServletRequest request, @NotNull SlingHttpServletResponse response) throws IOException {
         if (enabled) {
-            PrintWriter writer = response.getWriter();
+            SlingHttpServletResponse output = compress(request, response);
+            PrintWriter writer = output.getWriter();
+            boolean succeeded = false;
             try {
                 if (request.getParameter(REQ_PARAM_HELP) != null) {
                     writer.println(help());
                 } else {
-                    executeCommands(request, response);
+                    executeCommands(request, output);
                 }
                 writer.println("");
-                response.setStatus(SC_OK);
+                output.setStatus(SC_OK);
+                succeeded = true;
             }
             catch (AccessControlException e) {
-                response.setStatus(SC_FORBIDDEN);
-                response.sendError(SC_FORBIDDEN);
-            }    
+                output.setStatus(SC_FORBIDDEN);
+                output.sendError(SC_FORBIDDEN);
+            }
+            finally {
+                finish(output, succeeded);
+            }
         } else {
             response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
             response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "http service has been disabled");
@@ -294,18 +351,163 @@ public class CommandExecutorImpl extends AbstractPlumberServlet implements Comma
         return plumber.execute(resolver, path, bMap, writer, true);
     }
 
+    private static String persistedCommandKey(ResourceResolver resolver, String command) {
+        return resolver.getUserID() + '\n' + command;
+    }
+
+    /**
+     * reserves the pipe previously persisted for the same command &amp; user: its entry is removed until the pipe is
+     * {@link #releaseCommandPipe(ResourceResolver, String, Pipe) released}, so that a concurrent execution of the same
+     * command builds its own pipe. Pipes stored in date folders older than the purge max age are not reused, as a purge
+     * could remove them while they run
+     * @param resolver resolver executing the command
+     * @param command command to execute
+     * @return pipe previously persisted for the same command &amp; user, if it is still there, unchanged and not running
+     */
+    Pipe getPersistedPipe(ResourceResolver resolver, String command) {
+        String path = persistedCommands.remove(persistedCommandKey(resolver, command));
+        if (path != null && !isExpired(path)) {
+            Resource resource = resolver.getResource(path);
+            if (resource != null && command.equals(resource.getValueMap().get(PN_DESCRIPTION, String.class))
+                    && !plumber.isRunning(resource)) {
+                log.debug("reusing {} for {}", path, command);
+                return plumber.getPipe(resource);
+            }
+        }
+        return null;
+    }
+
+    private boolean isExpired(String path) {
+        return plumber instanceof PlumberImpl && ((PlumberImpl) plumber).isInExpiredBucket(path, Instant.now());
+    }
+
+    /**
+     * makes a command pipe available again for next executions of the same command &amp; user
+     * @param resolver resolver that executed the command
+     * @param command executed command
+     * @param pipe pipe persisted for that command
+     */
+    void releaseCommandPipe(ResourceResolver resolver, String command, Pipe pipe) {
+        persistedCommands.put(persistedCommandKey(resolver, command), pipe.getResource().getPath());
+    }
+
+    /**
+     * @param resolver resolver executing the command
+     * @param command command to execute
+     * @return pipe persisted for that command, either reused or built from it, to be released once executed
+     */
+    Pipe getCommandPipe(ResourceResolver resolver, String command) throws InvocationTargetException, IllegalAccessException, PersistenceException {
+        Pipe pipe = getPersistedPipe(resolver, command);
+        if (pipe == null) {
+            pipe = parse(resolver, command).build();
+            ModifiableValueMap root = pipe.getResource().adaptTo(ModifiableValueMap.class);
+            if (root != null) {
+                root.put(PN_DESCRIPTION, command);
+            }
+        }
+        return pipe;
+    }
+
+    /**
+     * builds an in memory sequence referring to given command pipes, to be executed at once, with one status and
+     * one commit strategy. With more than one thread, consecutive commands not modifying content, thus not depending
+     * on each other's data, are grouped in a manifold running them in parallel, as long as no previous command modifies
+     * content: manifold threads run on their own resolvers, that would not see those unsaved changes.
+     * Note that changes are only saved every buffer size outputs, so queries of a command won't see unsaved changes
+     * of previous ones.
+     * @param resolver resolver executing the commands
+     * @param pipes command pipes, in execution order
+     * @param threads number of threads for running read only commands
+     * @return batch pipe
+     */
+    Pipe buildBatch(ResourceResolver resolver, List<Pipe> pipes, int threads) {
+        TransientResource root = new TransientResource(resolver, plumber.generateUniquePath());
+        root.create(EMPTY, Collections.singletonMap(PROPERTY_RESOURCE_TYPE, SequencePipe.RESOURCE_TYPE));
+        List<String> group = new ArrayList<>();
+        int index = 0;
+        boolean modified = false;
+        for (Pipe pipe : pipes) {
+            modified |= pipe.modifiesContent();
+            if (threads > 1 && !modified) {
+                group.add(pipe.getResource().getPath());
+            } else {
+                index = addBatchStep(root, group, threads, index);
+                group.add(pipe.getResource().getPath());
+                index = addBatchStep(root, group, threads, index);
+            }
+        }
+        addBatchStep(root, group, threads, index);
+        return plumber.getPipe(root);
+    }
+
+    /**
+     * adds a reference to given group of command pipes, or a manifold of references if there are several, and empties
+     * the group
+     * @return next step index
+     */
+    private int addBatchStep(TransientResource root, List<String> group, int threads, int index) {
+        String step = Pipe.NN_CONF + SLASH + BATCH_STEP_PREFIX + index;
+        if (group.size() == 1) {
+            addReference(root, step, group.get(0));
+        } else if (group.size() > 1) {
+            Map<String, Object> manifold = new HashMap<>();
+            manifold.put(PROPERTY_RESOURCE_TYPE, ManifoldPipe.RESOURCE_TYPE);
+            manifold.put(ManifoldPipe.PN_NUM_THREADS, Math.min(threads, group.size()));
+            root.create(step, manifold);
+            for (int i = 0; i < group.size(); i++) {
+                addReference(root, step + SLASH + Pipe.NN_CONF + SLASH + BATCH_STEP_PREFIX + i, group.get(i));
+            }
+        } else {
+            return index;
+        }
+        group.clear();
+        return index + 1;
+    }
+
+    private void addReference(TransientResource root, String step, String path) {
+        Map<String, Object> reference = new HashMap<>();
+        reference.put(PROPERTY_RESOURCE_TYPE, ReferencePipe.RESOURCE_TYPE);
+        reference.put(Pipe.PN_EXPR, path);
+        root.create(step, reference);
+    }
+
+    /**
+     * @param cmds command tokens
+     * @return copy of the tokens of the command, with their builder api resolved, cached per command
+     */
+    List<Token> compile(String... cmds) {
+        String key = String.join(EMPTY, cmds).trim();
+        List<Token> tokens = parseCache.get(key);
+        if (tokens == null) {
+            tokens = parseTokens(cmds);
+            for (Token token : tokens) {
+                token.method = getMethodMap().get(token.pipeKey);
+                if (token.method == null){
+                    throw new IllegalArgumentException(token.pipeKey + " is not a valid pipe");
+                }
+                if (isConfExpected(token.method)) {
+                    token.conf = keyValuesToArray(token.args);
+                }
+            }
+            tokens = Collections.unmodifiableList(tokens);
+            parseCache.put(key, tokens);
+        }
+        List<Token> copies = new ArrayList<>(tokens.size());
+        for (Token token : tokens) {
+            copies.add(token.copy());
+        }
+        return copies;
+    }
+
     @Override
     public PipeBuilder parse(ResourceResolver resolver, String...cmds) throws InvocationTargetException, IllegalAccessException {
         PipeBuilder builder = plumber.newPipe(resolver);
-        for (Token token : parseTokens(cmds)){
-            Method method = getMethodMap().get(token.pipeKey);
-            if (method == null){
-                throw new IllegalArgumentException(token.pipeKey + " is not a valid pipe");
-            }
+        for (Token token : compile(cmds)){
+            Method method = token.method;
             if (isExpressionExpected(method)){
                 method.invoke(builder, token.args.get(0));
             } else if (isConfExpected(method)){
-                method.invoke(builder, (Object)keyValuesToArray(token.args));
+                method.invoke(builder, (Object)token.conf);
             } else if (isWithoutExpectedParameter(method)){
                 method.invoke(builder);
             }
@@ -421,6 +623,20 @@ public class CommandExecutorImpl extends AbstractPlumberServlet implements Comma
             }
         }
 
+        /**
+         * @return copy of these options, not sharing their arrays
+         */
+        Options copy() {
+            Options copy = new Options(Collections.emptyList());
+            copy.name = name;
+            copy.path = path;
+            copy.expr = expr;
+            copy.with = ArrayUtils.clone(with);
+            copy.bindings = ArrayUtils.clone(bindings);
+            copy.outputs = ArrayUtils.clone(outputs);
+            return copy;
+        }
+
         /**
          * write options to current builder
          * @param builder current builder
@@ -455,6 +671,21 @@ public class CommandExecutorImpl extends AbstractPlumberServlet implements Comma
         String pipeKey;
         List<String> args;
         CommandExecutorImpl.Options options;
+        Method method;
+        Object[] conf;
+
+        /**
+         * @return copy of this token, not sharing its arguments &amp; configuration
+         */
+        Token copy() {
+            Token copy = new Token();
+            copy.pipeKey = pipeKey;
+            copy.args = args != null ? new ArrayList<>(args) : null;
+            copy.options = options != null ? options.copy() : null;
+            copy.method = method;
+            copy.conf = ArrayUtils.clone(conf);
+            return copy;
+        }
 
         @Override
         public String toString() {
@@ -23,21 +23,29 @@ import org.apache.sling.pipes.OutputWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.io.StringWriter;
+import java.io.Writer;
 
+/**
+ * writes output as csv, with path and custom outputs as columns. Cells are quoted as in RFC 4180 when needed, and
+ * written straight to a buffered writer
+ */
 public class CsvWriter extends OutputWriter {
     private static final Logger LOGGER = LoggerFactory.getLogger(CsvWriter.class);
 
     private static final String CSV_EXTENSION = "csv";
 
-    private static final String SEPARATOR = ",";
+    private static final char SEPARATOR = ',';
+
+    private static final char QUOTE = '"';
 
     private static final String HEADER_ERROR = "errors";
 
-    List<String> headers;
+    String[] headers;
+
+    Writer out;
 
     @Override
     public boolean handleRequest(SlingHttpServletRequest request) {
@@ -50,57 +58,98 @@ public class CsvWriter extends OutputWriter {
         response.setContentType("plain/text");
     }
 
+    @Override
+    public void setWriter(Writer writer) {
+        super.setWriter(writer);
+        out = writer instanceof StringWriter || writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+    }
+
     @Override
     public void starts() {
         //nothing to start with
     }
 
-    void writeCell(Resource resource, List<String> elts, String key) {
-        if (key.equals(PATH_KEY)){
-            elts.add(resource.getPath());
-        } else if (customOutputs != null) {
-            elts.add(computeValue(key));
+    /**
+     * writes a cell, quoting it if it contains a separator, a quote or a line break
+     * @param value cell value
+     * @throws IOException in case writer fails
+     */
+    void writeCell(String value) throws IOException {
+        int length = value.length();
+        boolean quoted = false;
+        for (int i = 0; i < length && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == SEPARATOR || c == QUOTE || c == '\n' || c == '\r';
+        }
+        if (!quoted) {
+            out.write(value);
+            return;
+        }
+        out.write(QUOTE);
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) == QUOTE) {
+                out.write(value, start, i + 1 - start);
+                start = i;
+            }
+        }
+        out.write(value, start, length - start);
+        out.write(QUOTE);
+    }
+
+    /**
+     * writes a line of cells
+     * @param cells cells of the line
+     * @throws IOException in case writer fails
+     */
+    void writeLine(String... cells) throws IOException {
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) {
+                out.write(SEPARATOR);
+            }
+            writeCell(cells[i]);
         }
+        out.write(NEW_LINE);
     }
 
     @Override
     protected void writeItem(Resource resource) {
-        if (headers == null) {
-            headers = new ArrayList<>();
-            headers.add(PATH_KEY);
-            if (customOutputs != null) {
-                headers.addAll(customOutputs.keySet());
-            }
-            try {
-                writer.write(headers.stream().collect(Collectors.joining(SEPARATOR)) + NEW_LINE);
-            } catch (IOException e) {
-                LOGGER.error("unable to write header");
-            }
-        }
         try {
-            List<String> elts = new ArrayList<>();
-            for (String key : headers){
-                writeCell(resource, elts, key);
+            if (headers == null) {
+                headers = new String[(customOutputs != null ? customOutputs.size() : 0) + 1];
+                headers[0] = PATH_KEY;
+                if (customOutputs != null) {
+                    int column = 1;
+                    for (String key : customOutputs.keySet()) {
+                        headers[column++] = key;
+                    }
+                }
+                writeLine(headers);
+            }
+            writeCell(resource.getPath());
+            for (int i = 1; i < headers.length; i++) {
+                out.write(SEPARATOR);
+                writeCell(computeValue(headers[i]));
             }
-            String line = elts.stream().collect(Collectors.joining(SEPARATOR));
-            writer.write(line + NEW_LINE);
+            out.write(NEW_LINE);
         } catch (IOException e) {
-            LOGGER.error("unable to write header", e);
+            LOGGER.error("unable to write {}", resource.getPath(), e);
         }
     }
 
     @Override
     public void ends() {
+        writeSamples();
         try {
             if (!errors.isEmpty()){
-                writer.write(HEADER_ERROR + NEW_LINE);
+                writeLine(HEADER_ERROR);
                 for (String error : errors){
-                    writer.write(error + NEW_LINE);
+                    writeLine(error);
                 }
             }
-            writer.flush();
+            out.flush();
         } catch (IOException e) {
             LOGGER.error("unable to flush", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of non negative values, with log linear buckets: values below 16 have their own bucket,
+ * greater values share a bucket with those having the same 4 most significant bits (that is within 12.5% of them).
+ * Recording is an index computation and an atomic increment, percentiles are computed on demand.
+ */
+class DurationHistogram {
+    /**
+     * sub buckets per power of 2, as a number of bits
+     */
+    private static final int SUB_BITS = 3;
+
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(Long.MAX_VALUE) + 1);
+
+    private final LongAdder total = new LongAdder();
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    /**
+     * @param value value to compute the bucket of
+     * @return index of the bucket holding that value
+     */
+    static int indexOf(long value) {
+        if (value < 2 * SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * @param index index of a bucket
+     * @return highest value held by that bucket
+     */
+    static long highestValueOf(int index) {
+        if (index < 2 * SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long mantissa = index - (long) shift * SUB_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * @param value value to record, negative values are recorded as 0
+     */
+    void record(long value) {
+        long recorded = Math.max(0L, value);
+        counts.incrementAndGet(indexOf(recorded));
+        total.increment();
+        max.accumulate(recorded);
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    long count() {
+        return total.sum();
+    }
+
+    /**
+     * @return highest recorded value, 0 if none
+     */
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile percentile, between 0 and 100
+     * @return value under which given percentile of the recorded values are (with bucket precision), 0 if none
+     */
+    long percentile(double percentile) {
+        long count = count();
+        if (count == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max());
+            }
+        }
+        return max();
+    }
+}
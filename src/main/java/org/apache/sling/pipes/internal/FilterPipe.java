@@ -16,7 +16,6 @@
  */
 package org.apache.sling.pipes.internal;
 
-import org.apache.commons.collections4.IteratorUtils;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.pipes.BasePipe;
@@ -28,9 +27,10 @@ import org.slf4j.LoggerFactory;
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
 import javax.jcr.RepositoryException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
@@ -44,96 +44,197 @@ public class FilterPipe extends BasePipe {
     public static final String PN_NOCHILDREN = PREFIX_FILTER + "noChildren";
     public static final String PN_TEST = PREFIX_FILTER + "test";
     public static final String PN_INJECTCHILDRENCOUNT = PREFIX_FILTER + "injectChildrenCount";
+    /**
+     * when children count is injected, counting stops once that limit is reached, so that <code>childrenCount</code>
+     * is at most that limit; useful for conditions like "more than N children" on large folders
+     */
+    public static final String PN_CHILDRENCOUNTLIMIT = PREFIX_FILTER + "childrenCountLimit";
     public static final String BINDING_CHILDREN_COUNT = "childrenCount";
-    Map<String, Pattern> propertiesPatterns;
+    private static final Pattern EXPRESSION = Pattern.compile(PipeBindings.INJECTED_SCRIPT_REGEXP);
+    private static final Pattern REGEXP_CHARACTERS = Pattern.compile("[\\\\.\\[\\]{}()*+?^$|]");
+
+    /**
+     * filter configuration, compiled at first evaluation
+     */
+    FilterCondition condition;
 
     public FilterPipe(Plumber plumber, Resource resource, PipeBindings upperBindings) {
         super(plumber, resource, upperBindings);
     }
 
-    Pattern getPattern(Resource filterResource, final String propertyKey) {
-        if (propertiesPatterns == null) {
-            propertiesPatterns = new HashMap<>();
-        }
-        String key = filterResource.getPath() + SLASH + propertyKey;
-        return propertiesPatterns.computeIfAbsent(key, x -> {
-            String value = getBindings().instantiateExpression(filterResource.getValueMap().get(propertyKey, String.class));
-            return value != null ? Pattern.compile(value)  : null;
-        });//en.wikipedia.org
+    /**
+     * @param value configured value
+     * @return true if value contains an expression that has to be instantiated against current bindings
+     */
+    static boolean isExpression(String value) {
+        return value != null && EXPRESSION.matcher(value).find();
     }
 
-    boolean propertiesPass(ValueMap current, Resource filterResource) {
-        ValueMap filter = filterResource.getValueMap();
-        if (filter.containsKey(PN_TEST)){
-            Object test = bindings.instantiateObject(filter.get(PN_TEST, PipeBindings.FALSE_BINDING));
+    /**
+     * boolean configuration that is either a literal, parsed once, or an expression, instantiated at each evaluation
+     */
+    class BooleanCondition {
+        final String expression;
+        final Boolean literal;
+
+        BooleanCondition(String value) {
+            if (isExpression(value)) {
+                expression = value;
+                literal = null;
+            } else {
+                expression = null;
+                literal = Boolean.valueOf(value);
+            }
+        }
+
+        boolean evaluate() {
+            if (literal != null) {
+                return literal;
+            }
+            Object test = bindings.instantiateObject(expression);
             if (! (test instanceof Boolean)){
                 logger.error("instantiated test {} is not a boolean, filtering out", test);
                 return false;
             }
             return (Boolean) test;
         }
-        for (String key : filter.keySet()){
-            if (! IGNORED_PROPERTIES.contains(key) && !key.startsWith(PREFIX_FILTER)){
-                Pattern pattern = getPattern(filterResource, key);
-                if (!current.containsKey(key) || !pattern.matcher(current.get(key, String.class)).matches()){
-                    return false;
-                }
+    }
+
+    /**
+     * matches a property value either by equality, if configured value is a literal, or with a regular expression
+     */
+    static class PropertyMatcher {
+        final String key;
+        final String literal;
+        final Pattern pattern;
+
+        PropertyMatcher(String key, String value) {
+            this.key = key;
+            if (value == null || REGEXP_CHARACTERS.matcher(value).find()) {
+                literal = null;
+                pattern = value != null ? Pattern.compile(value) : null;
+            } else {
+                literal = value;
+                pattern = null;
             }
         }
-        return true;
-    }
 
-    boolean hasNoChildrenFilter(ValueMap filter) {
-        return (Boolean) bindings.instantiateObject(filter.get(PN_NOCHILDREN, PipeBindings.FALSE_BINDING));
+        boolean matches(ValueMap current) {
+            String value = current.get(key, String.class);
+            if (value == null) {
+                return false;
+            }
+            if (literal != null) {
+                return literal.equals(value);
+            }
+            return pattern != null && pattern.matcher(value).matches();
+        }
     }
 
-    boolean iterateOverChildren(Resource currentResource, Resource filterResource) throws RepositoryException {
-        Node filterNode = filterResource.adaptTo(Node.class);
-        Node currentNode = currentResource.adaptTo(Node.class);
-        if (filterNode != null) {
-            boolean returnValue = true;
-            for (NodeIterator children = filterNode.getNodes(); returnValue && children.hasNext(); ) {
-                String childName = children.nextNode().getName();
-                if (currentNode != null && !currentNode.hasNode(childName)) {
+    /**
+     * immutable tree of conditions, compiled out of a filter resource and its children
+     */
+    class FilterCondition {
+        final String name;
+        final BooleanCondition test;
+        final BooleanCondition noChildren;
+        final BooleanCondition injectChildrenCount;
+        final long childrenCountLimit;
+        final List<PropertyMatcher> matchers;
+        final List<FilterCondition> children;
+
+        FilterCondition(PipePlan filterPlan) {
+            name = filterPlan.getName();
+            ValueMap filter = filterPlan.getProperties();
+            test = filter.containsKey(PN_TEST) ? new BooleanCondition(filter.get(PN_TEST, String.class)) : null;
+            noChildren = new BooleanCondition(filter.get(PN_NOCHILDREN, Boolean.FALSE.toString()));
+            injectChildrenCount = new BooleanCondition(filter.get(PN_INJECTCHILDRENCOUNT, Boolean.FALSE.toString()));
+            String limit = getBindings().instantiateExpression(filter.get(PN_CHILDRENCOUNTLIMIT, "-1"));
+            try {
+                childrenCountLimit = Long.parseLong(limit.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(PN_CHILDRENCOUNTLIMIT + " should be a number, " + limit + " is not", e);
+            }
+            List<PropertyMatcher> propertyMatchers = new ArrayList<>();
+            if (test == null) {
+                for (String key : filter.keySet()) {
+                    if (!IGNORED_PROPERTIES.contains(key) && !key.startsWith(PREFIX_FILTER)) {
+                        propertyMatchers.add(new PropertyMatcher(key, getBindings().instantiateExpression(filter.get(key, String.class))));
+                    }
+                }
+            }
+            matchers = Collections.unmodifiableList(propertyMatchers);
+            List<FilterCondition> childConditions = new ArrayList<>();
+            for (PipePlan child : filterPlan.getChildren()) {
+                childConditions.add(new FilterCondition(child));
+            }
+            children = Collections.unmodifiableList(childConditions);
+        }
+
+        boolean propertiesPass(ValueMap current) {
+            if (test != null) {
+                return test.evaluate();
+            }
+            for (PropertyMatcher matcher : matchers) {
+                if (!matcher.matches(current)) {
                     return false;
-                } else {
-                    returnValue &= filterPasses(currentResource.getChild(childName), filterResource.getChild(childName));
                 }
             }
-            return returnValue;
+            return true;
         }
-        return false;
-    }
 
-    boolean childrenPass(Resource currentResource, Resource filterResource) throws RepositoryException {
-        Node currentNode = currentResource.adaptTo(Node.class);
-        if (currentNode != null) {
-            if (hasNoChildrenFilter(filterResource.getValueMap())) {
+        boolean childrenPass(Resource currentResource, Node currentNode) throws RepositoryException {
+            if (noChildren.evaluate()) {
                 return !currentNode.hasNodes();
-            } else {
-                return iterateOverChildren(currentResource, filterResource);
             }
+            for (FilterCondition child : children) {
+                if (!currentNode.hasNode(child.name) || !child.passes(currentResource.getChild(child.name))) {
+                    return false;
+                }
+            }
+            return true;
         }
-        return false;
-    }
 
-    boolean filterPasses(Resource currentResource, Resource filterResource) throws RepositoryException {
-        if (currentResource != null && filterResource != null) {
-            ValueMap current = currentResource.getValueMap();
-            ValueMap filter = filterResource.getValueMap();
-            boolean injectChildrenCount = (Boolean) bindings.instantiateObject(filter.get(PN_INJECTCHILDRENCOUNT, PipeBindings.FALSE_BINDING));
-            if (injectChildrenCount) {
-                Node currentNode = currentResource.adaptTo(Node.class);
-                if (currentNode != null) {
-                    int childrenCount = IteratorUtils.toList(currentNode.getNodes()).size();
-                    bindings.addBinding(BINDING_CHILDREN_COUNT, childrenCount);
-                }
+        boolean passes(Resource currentResource) throws RepositoryException {
+            if (currentResource == null) {
+                return false;
+            }
+            Node currentNode = currentResource.adaptTo(Node.class);
+            if (currentNode != null && injectChildrenCount.evaluate()) {
+                bindings.addBinding(BINDING_CHILDREN_COUNT, countChildren(currentNode, childrenCountLimit));
             }
-            if (propertiesPass(current, filterResource)) {
-                return childrenPass(currentResource, filterResource);
+            return propertiesPass(currentResource.getValueMap()) && currentNode != null && childrenPass(currentResource, currentNode);
+        }
+    }
+
+    /**
+     * counts children of a node: with a limit, children are streamed up to that limit, as repository's size might
+     * count them all; without, repository's size is used if available
+     * @param node node whose children are counted
+     * @param limit max count, negative for no limit
+     * @return children count, or limit if there are more children than that
+     */
+    static long countChildren(Node node, long limit) throws RepositoryException {
+        NodeIterator children = node.getNodes();
+        long size = limit < 0 ? children.getSize() : -1;
+        if (size < 0) {
+            size = 0;
+            while ((limit < 0 || size < limit) && children.hasNext()) {
+                children.nextNode();
+                size++;
             }
         }
-        return false;
+        return size;
+    }
+
+    boolean filterPasses(Resource currentResource, Resource filterResource) throws RepositoryException {
+        if (filterResource == null) {
+            return false;
+        }
+        if (condition == null) {
+            condition = new FilterCondition(PipePlan.of(plumber, filterResource));
+        }
+        return condition.passes(currentResource);
     }
 
     @Override
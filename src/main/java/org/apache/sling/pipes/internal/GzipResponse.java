@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes.internal;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.wrappers.SlingHttpServletResponseWrapper;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * response wrapper gzipping what is written to it, used when the client accepts that encoding.
+ * Compressed stream is sync flushed, so that streamed output is still delivered incrementally,
+ * and needs to be {@link #finish() finished} once everything has been written, or {@link #abort() aborted} on failure.
+ * Once an error status is set before the response is committed, compression is dropped and what follows is written
+ * uncompressed.
+ */
+class GzipResponse extends SlingHttpServletResponseWrapper {
+
+    static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+    static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+    static final String HEADER_VARY = "Vary";
+
+    static final String GZIP = "gzip";
+
+    private GZIPOutputStream gzip;
+
+    private boolean discarded;
+
+    private ServletOutputStream outputStream;
+
+    private PrintWriter writer;
+
+    GzipResponse(SlingHttpServletResponse response) {
+        super(response);
+    }
+
+    /**
+     * @param request current request
+     * @return true if the request's Accept-Encoding header contains gzip, without a zero quality
+     */
+    static boolean accepts(SlingHttpServletRequest request) {
+        String header = request.getHeader(HEADER_ACCEPT_ENCODING);
+        if (StringUtils.isNotBlank(header)) {
+            for (String coding : header.split(",")) {
+                String[] parts = coding.split(";");
+                if (GZIP.equalsIgnoreCase(parts[0].trim())) {
+                    return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+                }
+            }
+        }
+        return false;
+    }
+
+    private GZIPOutputStream getGzip() throws IOException {
+        if (gzip == null && !discarded) {
+            setHeader(HEADER_CONTENT_ENCODING, GZIP);
+            addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+            gzip = new GZIPOutputStream(super.getOutputStream(), true);
+        }
+        return gzip;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("writer has already been retrieved");
+        }
+        if (outputStream == null) {
+            outputStream = newOutputStream();
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (outputStream != null) {
+            throw new IllegalStateException("output stream has already been retrieved");
+        }
+        if (writer == null) {
+            String encoding = getCharacterEncoding();
+            writer = new PrintWriter(new OutputStreamWriter(newOutputStream(),
+                    StringUtils.isNotBlank(encoding) ? encoding : StandardCharsets.UTF_8.name()));
+        }
+        return writer;
+    }
+
+    /**
+     * @return stream writing to the compressing stream, or to the wrapped one once compression has been discarded
+     */
+    private ServletOutputStream newOutputStream() throws IOException {
+        getGzip();
+        ServletOutputStream wrapped = super.getOutputStream();
+        return new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return wrapped.isReady();
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                wrapped.setWriteListener(writeListener);
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                getTarget().write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                getTarget().write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                getTarget().flush();
+            }
+        };
+    }
+
+    private OutputStream getTarget() throws IOException {
+        return discarded ? super.getOutputStream() : getGzip();
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        //length of the compressed output is unknown
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        //length of the compressed output is unknown
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        } else if (gzip != null) {
+            gzip.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        if (sc >= HttpServletResponse.SC_BAD_REQUEST && !isCommitted()) {
+            discard();
+        }
+        super.setStatus(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        discard();
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        discard();
+        super.sendError(sc);
+    }
+
+    /**
+     * drops compressed output, so that error pages are sent uncompressed
+     */
+    private void discard() {
+        if (gzip != null) {
+            setHeader(HEADER_CONTENT_ENCODING, null);
+            gzip = null;
+        }
+        discarded = true;
+    }
+
+    /**
+     * ends output after a failure: compression is dropped if nothing has been sent yet, otherwise the compressed
+     * stream is finished, so that the client gets a valid (truncated) gzip stream
+     * @throws IOException issue writing to the wrapped response
+     */
+    void abort() throws IOException {
+        if (isCommitted()) {
+            finish();
+        } else {
+            discard();
+        }
+    }
+
+    /**
+     * writes the remaining compressed data & gzip trailer, if anything has been written
+     * @throws IOException issue writing to the wrapped response
+     */
+    void finish() throws IOException {
+        if (gzip != null) {
+            if (writer != null) {
+                writer.flush();
+            }
+            gzip.finish();
+            gzip.flush();
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes.internal;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.pipes.PipeBindings;
+import org.apache.sling.pipes.Plumber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.apache.sling.pipes.AbstractInputStreamPipe.CONNECT_TIMEOUT_DEFAULT;
+import static org.apache.sling.pipes.AbstractInputStreamPipe.PN_CONNECT_TIMEOUT;
+import static org.apache.sling.pipes.AbstractInputStreamPipe.PN_READ_TIMEOUT;
+import static org.apache.sling.pipes.AbstractInputStreamPipe.READ_TIMEOUT_DEFAULT;
+
+/**
+ * This pipe executes the pipes it has in its configuration like a container, and enriches each of their output
+ * resources with the response of an HTTP GET request to its expression, instantiated for that resource.
+ * Up to windowSize resources are read ahead, and their requests are sent concurrently, so that throughput is not
+ * bound to the latency of the remote endpoint. Each resource is output with the response (parsed if JSON) bound
+ * under this pipe's name; as inner pipes are read ahead, following pipes should rely on this pipe's bindings
+ * (e.g. path.name) rather than on inner pipes' ones.
+ * Requests are sent with a blocking HttpURLConnection, each holding one of the concurrency threads while in flight:
+ * this bundle runs on Java 8, which has no non-blocking HTTP client before java.net.http (Java 11), and no third
+ * party client is embedded for this single pipe; maxPerHost bounds how many of those threads a slow host can hold
+ */
+public class HttpEnrichPipe extends ContainerPipe {
+    private static final Logger log = LoggerFactory.getLogger(HttpEnrichPipe.class);
+
+    public static final String RESOURCE_TYPE = "slingPipes/httpEnrich";
+
+    /**
+     * maximum number of resources read ahead, whose requests are pending or whose response is not yet output
+     */
+    public static final String PN_WINDOW_SIZE = "windowSize";
+    public static final int WINDOW_SIZE_DEFAULT = 50;
+
+    /**
+     * maximum number of concurrent requests
+     */
+    public static final String PN_CONCURRENCY = "concurrency";
+    public static final int CONCURRENCY_DEFAULT = 10;
+
+    /**
+     * maximum number of concurrent requests to a same host
+     */
+    public static final String PN_MAX_PER_HOST = "maxPerHost";
+    public static final int MAX_PER_HOST_DEFAULT = 4;
+
+    /**
+     * if true (default), resources are output in the order inner pipes output them, otherwise as soon as their
+     * response arrives
+     */
+    public static final String PN_ORDERED = "ordered";
+
+    /**
+     * number of retries of a request failing with an I/O error, a 429 or a 5xx status
+     */
+    public static final String PN_RETRIES = "retries";
+    public static final int RETRIES_DEFAULT = 2;
+
+    /**
+     * delay in ms before first retry, doubled for each following one
+     */
+    public static final String PN_RETRY_DELAY = "retryDelay";
+    public static final long RETRY_DELAY_DEFAULT = 500L;
+
+    private static final String HEADER_PREFIX = "header_";
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final int windowSize;
+    private final int concurrency;
+    private final int maxPerHost;
+    private final boolean ordered;
+    private final int retries;
+    private final long retryDelay;
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    private ScheduledExecutorService executorService;
+
+    private Object binding;
+
+    /**
+     * Constructor
+     * @param plumber plumber
+     * @param resource pipe's configuration resource
+     * @param upperBindings pipe bindings
+     */
+    public HttpEnrichPipe(Plumber plumber, Resource resource, PipeBindings upperBindings) {
+        super(plumber, resource, upperBindings);
+        windowSize = properties.get(PN_WINDOW_SIZE, WINDOW_SIZE_DEFAULT);
+        concurrency = properties.get(PN_CONCURRENCY, CONCURRENCY_DEFAULT);
+        maxPerHost = properties.get(PN_MAX_PER_HOST, MAX_PER_HOST_DEFAULT);
+        ordered = properties.get(PN_ORDERED, true);
+        retries = properties.get(PN_RETRIES, RETRIES_DEFAULT);
+        retryDelay = properties.get(PN_RETRY_DELAY, RETRY_DELAY_DEFAULT);
+        connectTimeout = properties.get(PN_CONNECT_TIMEOUT, CONNECT_TIMEOUT_DEFAULT);
+        readTimeout = properties.get(PN_READ_TIMEOUT, READ_TIMEOUT_DEFAULT);
+    }
+
+    @Override
+    protected Iterator<Resource> computeSubpipesOutput() {
+        shutdown();
+        executorService = Executors.newScheduledThreadPool(concurrency);
+        return new EnrichingIterator(super.computeSubpipesOutput());
+    }
+
+    @Override
+    public Object getOutputBinding() {
+        return binding;
+    }
+
+    @Override
+    public void after() {
+        super.after();
+        shutdown();
+    }
+
+    private void shutdown() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+            executorService = null;
+        }
+    }
+
+    /**
+     * records an error for a resource whose request failed, keeping previous one if not yet collected
+     * @param path path of the resource
+     */
+    void reportError(String path) {
+        String previous = bindings.popCurrentError();
+        bindings.setCurrentError(previous != null ? previous + ", " + path : path);
+    }
+
+    /**
+     * @return headers configured with header_ prefixed properties, instantiated with current bindings
+     */
+    Map<String, String> getHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        for (String key : properties.keySet()) {
+            if (key.startsWith(HEADER_PREFIX)) {
+                headers.put(StringUtils.substringAfter(key, HEADER_PREFIX),
+                        bindings.instantiateExpression(properties.get(key, String.class)));
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * request to be sent for a given inner pipes output resource
+     */
+    static class Request {
+        final Resource resource;
+        final URL url;
+        final Map<String, String> headers;
+        final CompletableFuture<Request> done = new CompletableFuture<>();
+        int attempts = 0;
+        Object response;
+        IOException error;
+
+        Request(Resource resource, URL url, Map<String, String> headers) {
+            this.resource = resource;
+            this.url = url;
+            this.headers = headers;
+        }
+    }
+
+    /**
+     * response with an error status
+     */
+    static class HttpStatusException extends IOException {
+        final int status;
+
+        HttpStatusException(URL url, int status) {
+            super(url + " responded with " + status);
+            this.status = status;
+        }
+
+        boolean isRetriable() {
+            return status == TOO_MANY_REQUESTS || status >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+        }
+    }
+
+    /**
+     * @param request request to send
+     * @return response body, parsed if it is JSON
+     * @throws IOException in case request fails
+     */
+    Object fetch(Request request) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) request.url.openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+        request.headers.forEach(connection::setRequestProperty);
+        int status = connection.getResponseCode();
+        if (status >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            IOUtils.closeQuietly(connection.getErrorStream());
+            connection.disconnect();
+            throw new HttpStatusException(request.url, status);
+        }
+        String body;
+        try (InputStream input = ENCODING_GZIP.equalsIgnoreCase(connection.getContentEncoding()) ?
+                new GZIPInputStream(connection.getInputStream()) : connection.getInputStream()) {
+            body = IOUtils.toString(input, StandardCharsets.UTF_8);
+        }
+        try (JsonReader reader = Json.createReader(new StringReader(body))) {
+            return JsonUtil.unbox(reader.read());
+        } catch (JsonException e) {
+            return body;
+        }
+    }
+
+    /**
+     * requests to a same host, at most maxPerHost of them being sent at once, the others waiting in the queue without
+     * holding any thread; a request waiting for a retry does not count either
+     */
+    class HostQueue {
+        final ScheduledExecutorService executor;
+        final Deque<Request> waiting = new ArrayDeque<>();
+        int active = 0;
+
+        HostQueue(ScheduledExecutorService executor) {
+            this.executor = executor;
+        }
+
+        synchronized void submit(Request request) {
+            if (active < maxPerHost) {
+                active++;
+                executor.execute(() -> attempt(request));
+            } else {
+                waiting.add(request);
+            }
+        }
+
+        synchronized void release() {
+            Request next = waiting.poll();
+            if (next != null) {
+                executor.execute(() -> attempt(next));
+            } else {
+                active--;
+            }
+        }
+
+        /**
+         * sends a request, scheduling a retry with an exponential backoff if it fails with a retriable error
+         * @param request request to send
+         */
+        void attempt(Request request) {
+            try {
+                request.response = fetch(request);
+                release();
+                request.done.complete(request);
+            } catch (IOException e) {
+                release();
+                boolean retriable = !(e instanceof HttpStatusException) || ((HttpStatusException) e).isRetriable();
+                if (retriable && request.attempts < retries) {
+                    long delay = retryDelay << request.attempts++;
+                    log.debug("{} failed, retrying in {}ms", request.url, delay, e);
+                    executor.schedule(() -> submit(request), delay, TimeUnit.MILLISECONDS);
+                } else {
+                    request.error = e;
+                    request.done.complete(request);
+                }
+            } catch (RuntimeException e) {
+                release();
+                request.done.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Iterator reading inner pipes output ahead, and outputting resources as their responses arrive
+     */
+    class EnrichingIterator implements Iterator<Resource> {
+        final Iterator<Resource> input;
+        final ScheduledExecutorService executor = executorService;
+        final Map<String, HostQueue> hosts = new HashMap<>();
+        final BlockingQueue<Future<Request>> completed = new LinkedBlockingQueue<>();
+        /**
+         * requests in flight, in sending order; a linked set so that unordered mode removes completed ones in constant
+         * time
+         */
+        final Set<Future<Request>> window = new LinkedHashSet<>();
+        int pending = 0;
+        Request nextRequest;
+
+        EnrichingIterator(Iterator<Resource> input) {
+            this.input = input;
+        }
+
+        /**
+         * reads inner pipes output until window is full, sending a request for each resource
+         */
+        void fill() {
+            while (pending < windowSize && input.hasNext()) {
+                Resource resource = input.next();
+                try {
+                    URL url = new URL(getExpr());
+                    Request request = new Request(resource, url, getHeaders());
+                    if (!ordered) {
+                        request.done.whenComplete((r, e) -> completed.add(request.done));
+                    }
+                    String host = url.getHost() + ":" + url.getPort();
+                    hosts.computeIfAbsent(host, h -> new HostQueue(executor)).submit(request);
+                    window.add(request.done);
+                    pending++;
+                } catch (IOException | RuntimeException e) {
+                    log.error("unable to build request for {}", resource.getPath(), e);
+                    reportError(resource.getPath());
+                }
+            }
+        }
+
+        /**
+         * @return next completed request, null if there is none left
+         */
+        Request peek() {
+            while (nextRequest == null) {
+                fill();
+                if (pending == 0) {
+                    return null;
+                }
+                Future<Request> future;
+                try {
+                    if (ordered) {
+                        Iterator<Future<Request>> first = window.iterator();
+                        future = first.next();
+                        first.remove();
+                    } else {
+                        future = completed.take();
+                        window.remove(future);
+                    }
+                    pending--;
+                    Request request = future.get();
+                    if (request.error != null) {
+                        log.error("unable to enrich {}", request.resource.getPath(), request.error);
+                        reportError(request.resource.getPath());
+                    } else {
+                        nextRequest = request;
+                    }
+                } catch (ExecutionException e) {
+                    log.error("unable to enrich resource", e.getCause());
+                } catch (InterruptedException e) {
+                    log.error("interrupted while waiting for a response", e);
+                    Thread.currentThread().interrupt();
+                    window.forEach(f -> f.cancel(true));
+                    return null;
+                }
+            }
+            return nextRequest;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean hasNext = peek() != null;
+            if (!hasNext) {
+                shutdown();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public Resource next() {
+            Request request = peek();
+            if (request == null) {
+                throw new NoSuchElementException();
+            }
+            nextRequest = null;
+            binding = request.response;
+            bindings.updateBindings(HttpEnrichPipe.this, request.resource);
+            return request.resource;
+        }
+    }
+}
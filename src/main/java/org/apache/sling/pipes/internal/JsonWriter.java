@@ -24,6 +24,8 @@ import org.apache.sling.pipes.OutputWriter;
 import javax.json.Json;
 import javax.json.stream.JsonGenerator;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -34,10 +36,22 @@ public class JsonWriter extends OutputWriter {
 
     public static final String JSON_EXTENSION = "json";
 
+    /**
+     * number of written items after which the generator is flushed to the underlying writer
+     */
+    public static final int FLUSH_INTERVAL = 100;
+
     JsonWriter(){
         setWriter(new StringWriter());
     }
 
+    /**
+     * @param writer writer the output is streamed to, rather than kept in memory
+     */
+    public JsonWriter(Writer writer) {
+        setWriter(writer);
+    }
+
     @Override
     public boolean handleRequest(SlingHttpServletRequest request) {
         return JSON_EXTENSION.equals(request.getRequestPathInfo().getExtension());
@@ -68,12 +82,19 @@ public class JsonWriter extends OutputWriter {
             }
             jsonGenerator.writeEnd();
         }
+        if (size % FLUSH_INTERVAL == 0) {
+            jsonGenerator.flush();
+        }
     }
 
     @Override
     public void ends() {
+        writeSamples();
         jsonGenerator.writeEnd();
         jsonGenerator.write(KEY_SIZE,size);
+        if (getSampling() != Sampling.FIRST) {
+            jsonGenerator.write(KEY_SAMPLING, getSampling().name().toLowerCase(Locale.ROOT));
+        }
         if (nbErrors > 0) {
             jsonGenerator.write(KEY_NB_ERRORS, nbErrors);
             jsonGenerator.writeStartArray(KEY_ERRORS);
@@ -85,4 +106,23 @@ public class JsonWriter extends OutputWriter {
         jsonGenerator.writeEnd();
         jsonGenerator.flush();
     }
+
+    /**
+     * @return written output if it is kept in memory, a summary with size and number of errors if it is streamed
+     */
+    @Override
+    public String toString() {
+        if (writer instanceof StringWriter) {
+            return writer.toString();
+        }
+        StringWriter summary = new StringWriter();
+        try (JsonGenerator generator = Json.createGenerator(summary)) {
+            generator.writeStartObject().write(KEY_SIZE, size);
+            if (nbErrors > 0) {
+                generator.write(KEY_NB_ERRORS, nbErrors);
+            }
+            generator.writeEnd();
+        }
+        return summary.toString();
+    }
 }
\ No newline at end of file
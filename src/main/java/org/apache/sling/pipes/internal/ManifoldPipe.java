@@ -20,6 +20,7 @@ import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.resource.NonExistingResource;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.pipes.OutputWriter;
 import org.apache.sling.pipes.Pipe;
 import org.apache.sling.pipes.PipeBindings;
@@ -102,8 +103,8 @@ public class ManifoldPipe extends SuperPipe {
 
         @Override
         public void run() {
-            try {
-                plumber.execute(pipe.getResource().getResourceResolver().clone(null), pipe, null, new ThreadOutputWriter(), true);
+            try (ResourceResolver resolver = pipe.getResource().getResourceResolver().clone(null)) {
+                plumber.execute(resolver, pipe, null, new ThreadOutputWriter(), true);
             } catch (Exception e) {
                 log.error("Error while running pipe %s", pipe.getName(), e);
             }
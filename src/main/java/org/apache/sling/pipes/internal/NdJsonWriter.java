@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes.internal;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.pipes.OutputWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * output writer streaming newline delimited JSON: one object per output resource, followed by
+ * a last line with size (and errors, if any). Output is flushed every {@link JsonWriter#FLUSH_INTERVAL} items,
+ * so clients can consume it while the pipe is still running.
+ */
+public class NdJsonWriter extends OutputWriter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NdJsonWriter.class);
+
+    public static final String NDJSON_EXTENSION = "ndjson";
+
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+    private static final JsonGeneratorFactory FACTORY = Json.createGeneratorFactory(Collections.emptyMap());
+
+    /**
+     * view of the response writer on which line generators are created, ignoring their flush &amp; close calls, so
+     * that lines are written straight to the response, which is only flushed every {@link JsonWriter#FLUSH_INTERVAL}
+     */
+    private Writer lineWriter;
+
+    @Override
+    public boolean handleRequest(SlingHttpServletRequest request) {
+        return NDJSON_EXTENSION.equals(request.getRequestPathInfo().getExtension());
+    }
+
+    @Override
+    protected void initResponse(SlingHttpServletResponse response) {
+        response.setCharacterEncoding("utf-8");
+        response.setContentType(NDJSON_CONTENT_TYPE);
+    }
+
+    @Override
+    public void starts() {
+        //nothing to open, each line is a standalone JSON value, generated on the response writer
+        lineWriter = new FilterWriter(writer) {
+            @Override
+            public void flush() {
+                //flushed with the response writer only
+            }
+
+            @Override
+            public void close() {
+                //response writer is closed by the servlet
+            }
+        };
+    }
+
+    @Override
+    protected void writeItem(Resource resource) {
+        try (JsonGenerator generator = FACTORY.createGenerator(lineWriter)) {
+            generator.writeStartObject();
+            generator.write(PATH_KEY, resource.getPath());
+            if (customOutputs != null) {
+                for (Map.Entry<String, Object> entry : customOutputs.entrySet()) {
+                    generator.write(entry.getKey(), computeValue(entry.getKey()));
+                }
+            }
+            generator.writeEnd();
+        }
+        endLine(size % JsonWriter.FLUSH_INTERVAL == 0);
+    }
+
+    @Override
+    public void ends() {
+        writeSamples();
+        try (JsonGenerator generator = FACTORY.createGenerator(lineWriter)) {
+            generator.writeStartObject();
+            generator.write(KEY_SIZE, size);
+            if (getSampling() != Sampling.FIRST) {
+                generator.write(KEY_SAMPLING, getSampling().name().toLowerCase(Locale.ROOT));
+            }
+            if (nbErrors > 0) {
+                generator.write(KEY_NB_ERRORS, nbErrors);
+                generator.writeStartArray(KEY_ERRORS);
+                for (String error : errors) {
+                    generator.write(error);
+                }
+                generator.writeEnd();
+            }
+            generator.writeEnd();
+        }
+        endLine(true);
+    }
+
+    /**
+     * ends the JSON line that has just been generated
+     * @param flush true if the writer should be flushed afterwards
+     */
+    private void endLine(boolean flush) {
+        try {
+            writer.write(NEW_LINE);
+            if (flush) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            LOGGER.error("unable to end line {}", size, e);
+        }
+    }
+}
@@ -32,6 +32,7 @@ import org.apache.sling.pipes.PipeBuilder;
 import org.apache.sling.pipes.PipeExecutor;
 import org.apache.sling.pipes.Plumber;
 import org.apache.sling.pipes.internal.inputstream.CsvPipe;
+import org.apache.sling.pipes.internal.inputstream.JsonLinesPipe;
 import org.apache.sling.pipes.internal.inputstream.JsonPipe;
 import org.apache.sling.pipes.internal.inputstream.RegexpPipe;
 import org.apache.sling.pipes.internal.slingquery.ChildrenPipe;
@@ -43,6 +44,7 @@ import org.apache.sling.pipes.internal.slingquery.SiblingsPipe;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -77,6 +79,8 @@ public class PipeBuilderImpl implements PipeBuilder {
 
     ResourceResolver resolver;
 
+    boolean persistent;
+
     /**
      * constructor (to only allow internal classes to build it out)
      * @param resolver resolver with which the pipe will be built and executed
@@ -189,6 +193,13 @@ public class PipeBuilderImpl implements PipeBuilder {
         return pipeWithExpr(JsonPipe.RESOURCE_TYPE, expr);
     }
 
+    @Override
+    @PipeExecutor(command = "jsonl", resourceType = JsonLinesPipe.RESOURCE_TYPE, pipeClass = JsonLinesPipe.class,
+            description = "read expr's json lines and output each record in the bindings")
+    public PipeBuilder jsonl(String expr) {
+        return pipeWithExpr(JsonLinesPipe.RESOURCE_TYPE, expr);
+    }
+
     @Override
     @PipeExecutor(command = "egrep", resourceType = RegexpPipe.RESOURCE_TYPE, pipeClass = RegexpPipe.class,
             description = "read expr's txt and output each found pattern in the binding")
@@ -435,18 +446,64 @@ public class PipeBuilderImpl implements PipeBuilder {
         }
         int index = 0;
         for (Step step : steps){
-            String name = DEFAULT_NAMES.length > index ? DEFAULT_NAMES[index] : Integer.toString(index);
-            if (StringUtils.isNotBlank(step.name)) {
-                name = step.name;
-            }
-            index++;
-            persistStep(path + "/" + Pipe.NN_CONF + "/" + name, NT_SLING_ORDERED_FOLDER, step);
+            persistStep(path + "/" + Pipe.NN_CONF + "/" + stepName(step, index++), NT_SLING_ORDERED_FOLDER, step);
         }
         resolver.commit();
         logger.debug("built pipe under {}", path);
         return plumber.getPipe(pipeResource);
     }
 
+    /**
+     * @param step step to name
+     * @param index index of the step in the pipe
+     * @return configured name of the step, or default name for that index
+     */
+    String stepName(Step step, int index) {
+        if (StringUtils.isNotBlank(step.name)) {
+            return step.name;
+        }
+        return DEFAULT_NAMES.length > index ? DEFAULT_NAMES[index] : Integer.toString(index);
+    }
+
+    /**
+     * builds the pipe out of in memory resources, its configuration is neither persisted, nor left to purge
+     * @return Created (not executed) Pipe instance
+     */
+    Pipe buildTransient() {
+        TransientResource pipeResource = new TransientResource(resolver, plumber.generateUniquePath());
+        transientStep(pipeResource, containerStep);
+        if (outputs != null) {
+            pipeResource.create(OutputWriter.PARAM_WRITER, outputs);
+        }
+        int index = 0;
+        for (Step step : steps) {
+            transientStep(pipeResource.create(Pipe.NN_CONF + "/" + stepName(step, index++), Collections.emptyMap()), step);
+        }
+        logger.debug("built transient pipe {}", pipeResource.getPath());
+        return plumber.getPipe(pipeResource);
+    }
+
+    /**
+     * Write a step in a transient resource
+     * @param resource resource holding the step
+     * @param step step to write
+     */
+    void transientStep(TransientResource resource, Step step) {
+        resource.create(EMPTY, step.properties);
+        if (StringUtils.isNotBlank(step.name)) {
+            resource.create(EMPTY, Collections.singletonMap(Pipe.PN_NAME, step.name));
+        }
+        for (Map.Entry<String, Map<String, Object>> entry : step.confs.entrySet()) {
+            resource.create(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public PipeBuilder persistent() {
+        persistent = true;
+        return this;
+    }
+
     @Override
     public ExecutionResult run() {
         return run(null);
@@ -462,10 +519,25 @@ public class PipeBuilderImpl implements PipeBuilder {
 
     @Override
     public ExecutionResult run(Map<String, Object> bindings) {
-        JsonWriter writer = new JsonWriter();
+        return run(bindings, new JsonWriter());
+    }
+
+    @Override
+    public ExecutionResult run(Map<String, Object> bindings, Writer output) {
+        JsonWriter writer = new JsonWriter(output);
+        writer.setMax(-1);
+        return run(bindings, writer);
+    }
+
+    /**
+     * @param bindings additional bindings
+     * @param writer output writer of the execution
+     * @return result of the execution
+     */
+    ExecutionResult run(Map<String, Object> bindings, OutputWriter writer) {
         try {
             writer.starts();
-            Pipe pipe = this.build();
+            Pipe pipe = persistent ? this.build() : buildTransient();
             return plumber.execute(resolver, pipe, bindings, writer, true);
         } catch (PersistenceException e) {
             logger.error("unable to build the pipe", e);
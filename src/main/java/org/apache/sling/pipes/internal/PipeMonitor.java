@@ -28,7 +28,13 @@ import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.OpenDataException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Statistics of a monitored pipe, safe to be updated by concurrent executions of it
+ */
 public class PipeMonitor implements PipeMonitorMBean {
     protected static final Logger LOGGER = LoggerFactory.getLogger(PipeMonitor.class);
 
@@ -36,51 +42,81 @@ public class PipeMonitor implements PipeMonitorMBean {
 
     String path;
 
-    boolean running = false;
+    final AtomicInteger running = new AtomicInteger();
+
+    final LongAdder executions = new LongAdder();
+
+    final LongAdder failed = new LongAdder();
 
-    String status;
+    final LongAdder items = new LongAdder();
 
-    long lastStarted;
+    final LongAdder commits = new LongAdder();
 
-    long duration;
+    final LongAdder errors = new LongAdder();
 
-    int executions = 0;
+    final LongAdder totalDuration = new LongAdder();
 
-    int failed = 0;
+    /**
+     * execution durations, in milliseconds
+     */
+    final DurationHistogram durations = new DurationHistogram();
 
-    long mean;
+    volatile double lastThroughput;
 
     Plumber plumber;
 
-    ExecutionResult lastResult;
+    volatile CompositeData lastResult;
 
-    public void starts(){
-        lastStarted = System.currentTimeMillis();
-        running = true;
-        status = BasePipe.STATUS_STARTED;
+    /**
+     * to be called when an execution of the pipe starts
+     * @return start time of that execution, to be passed when it ends
+     */
+    public long starts(){
+        running.incrementAndGet();
+        return System.nanoTime();
     }
 
-    public void ends() {
-        duration = System.currentTimeMillis() - lastStarted;
-        mean = ((mean * executions) + duration) / (executions + 1);
-        executions ++;
-        running = false;
-        status = BasePipe.STATUS_FINISHED;
+    /**
+     * to be called when an execution of the pipe successfully ends
+     * @param started value returned by {@link #starts()} for that execution
+     * @param result result of that execution
+     */
+    public void ends(long started, ExecutionResult result) {
+        long nanos = System.nanoTime() - started;
+        long duration = TimeUnit.NANOSECONDS.toMillis(nanos);
+        durations.record(duration);
+        totalDuration.add(duration);
+        executions.increment();
+        items.add(result.size());
+        errors.add(result.getNbErrors());
+        lastThroughput = result.size() * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1L, nanos);
+        setLastResult(result);
+        running.decrementAndGet();
     }
 
-    public long getFailed(){
-        return failed;
+    /**
+     * to be called when an execution of the pipe fails
+     */
+    public void failed() {
+        failed.increment();
+        running.decrementAndGet();
+    }
+
+    /**
+     * to be called each time changes of an execution of the pipe are committed
+     */
+    public void committed() {
+        commits.increment();
     }
 
     @Override
-    public String getStatus() {
-        return status;
+    public long getFailed(){
+        return failed.sum();
     }
 
-    public void failed() {
-        failed ++;
-        running = false;
-        status = BasePipe.STATUS_FINISHED;
+    @Override
+    public String getStatus() {
+        return running.get() > 0 ? BasePipe.STATUS_STARTED : BasePipe.STATUS_FINISHED;
     }
 
     public PipeMonitor(Plumber currentPlumber, Pipe pipe){
@@ -101,28 +137,71 @@ public class PipeMonitor implements PipeMonitorMBean {
 
     @Override
     public long getExecutionCount() {
-        return executions;
+        return executions.sum();
     }
 
     @Override
     public long getMeanDurationMilliseconds() {
-        return mean;
+        long count = executions.sum();
+        return count > 0 ? totalDuration.sum() / count : 0L;
     }
 
-    public void setLastResult(ExecutionResult result) {
-        lastResult = result;
+    @Override
+    public long getDurationP50Milliseconds() {
+        return durations.percentile(50);
     }
 
     @Override
-    public CompositeData getLastResult() {
+    public long getDurationP95Milliseconds() {
+        return durations.percentile(95);
+    }
+
+    @Override
+    public long getDurationP99Milliseconds() {
+        return durations.percentile(99);
+    }
+
+    @Override
+    public long getMaxDurationMilliseconds() {
+        return durations.max();
+    }
+
+    @Override
+    public long getItemsCount() {
+        return items.sum();
+    }
+
+    @Override
+    public long getCommitCount() {
+        return commits.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getLastThroughput() {
+        return lastThroughput;
+    }
+
+    /**
+     * keeps the bounded composite data view of the result, not the result itself
+     * @param result last execution result
+     */
+    public void setLastResult(ExecutionResult result) {
         try {
-            if (lastResult != null){
-                return lastResult.asCompositeData();
-            }
+            lastResult = result.asCompositeData();
         } catch (OpenDataException e) {
             LOGGER.error("unable to dump last result as composite data", e);
+            lastResult = null;
         }
-        return null;
+    }
+
+    @Override
+    public CompositeData getLastResult() {
+        return lastResult;
     }
 
     @Override
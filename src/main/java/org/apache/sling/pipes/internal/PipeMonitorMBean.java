@@ -34,6 +34,34 @@ public interface PipeMonitorMBean {
 
     long getMeanDurationMilliseconds();
 
+    long getDurationP50Milliseconds();
+
+    long getDurationP95Milliseconds();
+
+    long getDurationP99Milliseconds();
+
+    long getMaxDurationMilliseconds();
+
+    /**
+     * @return number of items output by all successful executions
+     */
+    long getItemsCount();
+
+    /**
+     * @return number of commits made by executions
+     */
+    long getCommitCount();
+
+    /**
+     * @return number of errors reported by all successful executions
+     */
+    long getErrorCount();
+
+    /**
+     * @return items output per second by last successful execution
+     */
+    double getLastThroughput();
+
     long getFailed();
 
     String getStatus();
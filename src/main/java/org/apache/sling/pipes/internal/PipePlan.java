@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes.internal;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ValueMapDecorator;
+import org.apache.sling.pipes.Plumber;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.apache.jackrabbit.JcrConstants.JCR_PRIMARYTYPE;
+import static org.apache.jackrabbit.JcrConstants.NT_UNSTRUCTURED;
+
+/**
+ * immutable snapshot of a pipe configuration tree (properties, primary type and ordered children),
+ * compiled once so that pipes applying it to each of their inputs don't read it from the repository again
+ */
+final class PipePlan {
+
+    private final String name;
+
+    private final String path;
+
+    private final String primaryType;
+
+    private final ValueMap properties;
+
+    private final Map<String, PipePlan> children;
+
+    private PipePlan(Resource resource) {
+        name = resource.getName();
+        path = resource.getPath();
+        properties = new ValueMapDecorator(Collections.unmodifiableMap(new LinkedHashMap<>(resource.getValueMap())));
+        primaryType = properties.get(JCR_PRIMARYTYPE, NT_UNSTRUCTURED);
+        Map<String, PipePlan> childPlans = new LinkedHashMap<>();
+        for (Resource child : resource.getChildren()) {
+            childPlans.put(child.getName(), new PipePlan(child));
+        }
+        this.children = Collections.unmodifiableMap(childPlans);
+    }
+
+    /**
+     * @param resource root of the configuration tree
+     * @return compiled plan of that tree
+     */
+    static PipePlan compile(Resource resource) {
+        return new PipePlan(resource);
+    }
+
+    /**
+     * @param plumber plumber possibly caching plans
+     * @param resource root of the configuration tree
+     * @return plan of that tree, cached by the plumber if it can
+     */
+    static PipePlan of(Plumber plumber, Resource resource) {
+        return plumber instanceof PlumberImpl ? ((PlumberImpl) plumber).getPlan(resource) : compile(resource);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    String getPrimaryType() {
+        return primaryType;
+    }
+
+    ValueMap getProperties() {
+        return properties;
+    }
+
+    Collection<PipePlan> getChildren() {
+        return children.values();
+    }
+
+    boolean hasChildren() {
+        return !children.isEmpty();
+    }
+
+    PipePlan getChild(String childName) {
+        return children.get(childName);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes.internal;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.jackrabbit.JcrConstants.JCR_LASTMODIFIED;
+
+/**
+ * caches plans of pipe configurations living under given paths, keyed by path and <code>jcr:lastModified</code>.
+ * Plans are evicted as soon as a change is observed in their tree, or in one of their ancestors. As the root stamp
+ * does not move when only descendants are modified, a plan whose compilation started before a change has been
+ * observed is not cached, so that it can't replace the eviction of the stale plan.
+ */
+class PipePlanCache implements ResourceChangeListener {
+
+    private final String[] paths;
+
+    private final Map<String, Entry> plans;
+
+    /**
+     * number of observed changes, guarded by plans
+     */
+    private long generation;
+
+    private static class Entry {
+        final long stamp;
+        final PipePlan plan;
+
+        Entry(long stamp, PipePlan plan) {
+            this.stamp = stamp;
+            this.plan = plan;
+        }
+    }
+
+    /**
+     * @param paths paths under which configurations are cached, and changes listened to
+     * @param size maximum number of cached plans, least recently used ones being evicted first
+     */
+    PipePlanCache(String[] paths, int size) {
+        this.paths = paths.clone();
+        this.plans = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    String[] getPaths() {
+        return paths.clone();
+    }
+
+    /**
+     * @param resource root of a configuration tree
+     * @return cached plan of that tree if it has not been modified since, freshly compiled plan otherwise
+     */
+    PipePlan get(Resource resource) {
+        String path = resource.getPath();
+        if (!isCached(path)) {
+            return PipePlan.compile(resource);
+        }
+        Calendar lastModified = resource.getValueMap().get(JCR_LASTMODIFIED, Calendar.class);
+        long stamp = lastModified != null ? lastModified.getTimeInMillis() : 0L;
+        long started;
+        synchronized (plans) {
+            Entry entry = plans.get(path);
+            if (entry != null && entry.stamp == stamp) {
+                return entry.plan;
+            }
+            started = generation;
+        }
+        PipePlan plan = PipePlan.compile(resource);
+        synchronized (plans) {
+            if (started == generation) {
+                plans.put(path, new Entry(stamp, plan));
+            }
+        }
+        return plan;
+    }
+
+    int size() {
+        synchronized (plans) {
+            return plans.size();
+        }
+    }
+
+    private boolean isCached(String path) {
+        for (String root : paths) {
+            if (isAncestorOrSelf(root, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAncestorOrSelf(String ancestor, String path) {
+        return path.equals(ancestor) || path.startsWith(ancestor.endsWith("/") ? ancestor : ancestor + "/");
+    }
+
+    @Override
+    public void onChange(@NotNull List<ResourceChange> changes) {
+        synchronized (plans) {
+            generation++;
+            for (ResourceChange change : changes) {
+                String changed = change.getPath();
+                for (Iterator<String> cached = plans.keySet().iterator(); cached.hasNext();) {
+                    String path = cached.next();
+                    if (isAncestorOrSelf(path, changed) || isAncestorOrSelf(changed, path)) {
+                        cached.remove();
+                    }
+                }
+            }
+        }
+    }
+}
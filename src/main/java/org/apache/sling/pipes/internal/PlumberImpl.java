@@ -28,6 +28,7 @@ import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
 import org.apache.sling.caconfig.spi.ConfigurationMetadataProvider;
 import org.apache.sling.distribution.DistributionRequest;
 import org.apache.sling.distribution.DistributionRequestType;
@@ -51,6 +52,8 @@ import org.apache.sling.pipes.internal.bindings.ConfigurationMap;
 import org.apache.sling.pipes.internal.bindings.JxltEngine;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
@@ -71,10 +74,21 @@ import javax.management.ObjectName;
 import javax.script.Bindings;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
 import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.AccessControlException;
+import java.time.DateTimeException;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -82,8 +96,10 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Dictionary;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -106,8 +122,11 @@ import static org.apache.sling.pipes.BasePipe.STATUS_STARTED;
 @Designate(ocd = PlumberImpl.Configuration.class)
 public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnable {
     private final Logger log = LoggerFactory.getLogger(this.getClass());
+
     public static final int DEFAULT_BUFFER_SIZE = 1000;
 
+    public static final long DEFAULT_HTTP_CACHE_MAX_SIZE = 100L * 1024 * 1024;
+
     static final String PN_MONITORED = "monitored";
     static final String MONITORED_PIPES_QUERY = String.format("//element(*,nt:base)[@sling:resourceType='%s' and @%s]", ContainerPipe.RESOURCE_TYPE, PN_MONITORED);
 
@@ -158,6 +177,19 @@ public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnabl
         @AttributeDefinition(description = "schedule of purge process")
         @SuppressWarnings("squid:S100") // osgi convention
         String scheduler_expression() default "0 0 12 */7 * ?";
+
+        @AttributeDefinition(description = "Paths under which pipe configurations are compiled once, and cached until a change is observed in their tree")
+        String[] planCachePaths() default {};
+
+        @AttributeDefinition(description = "Maximum number of cached pipe configurations")
+        int planCacheSize() default 500;
+
+        @AttributeDefinition(description = "Directory where remote inputs of pipes having httpCache set are cached, "
+                + "defaults to sling-pipes-http-cache in the temporary directory")
+        String httpCacheDirectory() default "";
+
+        @AttributeDefinition(description = "Maximum size in bytes of cached remote inputs, least recently used being evicted beyond")
+        long httpCacheMaxSize() default DEFAULT_HTTP_CACHE_MAX_SIZE;
     }
 
     @Reference(policy= ReferencePolicy.DYNAMIC, cardinality= ReferenceCardinality.OPTIONAL)
@@ -172,7 +204,18 @@ public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnabl
     @Reference
     ConfigurationMetadataProvider configMetadataProvider;
 
-    Map<String, Class<? extends BasePipe>> registry;
+    /**
+     * creates a pipe instance out of its configuration
+     */
+    @FunctionalInterface
+    interface PipeFactory {
+        Pipe create(Plumber plumber, Resource resource, PipeBindings upperBindings) throws ReflectiveOperationException;
+    }
+
+    /**
+     * pipe factories, with constructors resolved once at registration, per resource type
+     */
+    Map<String, PipeFactory> registry;
 
     public static final String SLING_EVENT_TOPIC = "org/apache/sling/pipes/topic";
 
@@ -184,15 +227,29 @@ public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnabl
 
     private Map<String, PipeMonitor> monitoredPipes;
 
+    private PipePlanCache plans;
+
+    private volatile long lastPurgeDeletedResources;
+
+    private volatile long lastPurgeDuration;
+
+    private ServiceRegistration<ResourceChangeListener> plansRegistration;
+
     public static final String PN_NBOUTPUTRESOURCES = "nbOutputResources";
 
+    /**
+     * binary property holding the whole output of the last asynchronous execution
+     */
+    public static final String PN_LAST_OUTPUT = "lastOutput";
+
     @Activate
-    public void activate(Configuration configuration){
+    public void activate(BundleContext bundleContext, Configuration configuration){
         this.configuration = configuration;
         serviceUser = configuration.serviceUser() != null ? Collections.singletonMap(SUBSERVICE, configuration.serviceUser()) : null;
         allowedUsers = Arrays.asList(configuration.authorizedUsers());
         registry = new HashMap<>();
         registerPipes();
+        registerPlanCache(bundleContext);
         toggleJmxRegistration(this, PlumberMXBean.class.getName(), true);
         refreshMonitoredPipes();
     }
@@ -203,6 +260,8 @@ public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnabl
     void registerPipes(){
         registerPipe(ContainerPipe.RESOURCE_TYPE, ContainerPipe.class);
         registerPipe(ManifoldPipe.RESOURCE_TYPE, ManifoldPipe.class);
+        registerPipe(SequencePipe.RESOURCE_TYPE, SequencePipe.class);
+        registerPipe(HttpEnrichPipe.RESOURCE_TYPE, HttpEnrichPipe.class);
         for (Method method : PipeBuilderImpl.class.getDeclaredMethods()){
             PipeExecutor executor = method.getAnnotation(PipeExecutor.class);
             if (executor != null){
@@ -211,6 +270,29 @@ public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnabl
         }
     }
 
+    /**
+     * caches pipe plans under configured paths, and listens to changes there for invalidating them
+     * @param bundleContext context with which invalidation listener is registered
+     */
+    void registerPlanCache(BundleContext bundleContext) {
+        plans = null;
+        String[] paths = configuration.planCachePaths();
+        if (paths != null && paths.length > 0) {
+            plans = new PipePlanCache(paths, configuration.planCacheSize());
+            Dictionary<String, Object> properties = new Hashtable<>();
+            properties.put(ResourceChangeListener.PATHS, plans.getPaths());
+            plansRegistration = bundleContext.registerService(ResourceChangeListener.class, plans, properties);
+        }
+    }
+
+    /**
+     * @param resource root of a configuration tree
+     * @return plan of that tree, cached if it is under a configured path
+     */
+    PipePlan getPlan(Resource resource) {
+        return plans != null ? plans.get(resource) : PipePlan.compile(resource);
+    }
+
     void checkPermissions(ResourceResolver context, String... permissions) {
         for (String permission : permissions) {
             if (context.getResource(permission) == null) {
@@ -244,6 +326,10 @@ public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnabl
 
     @Deactivate
     public void deactivate(){
+        if (plansRegistration != null) {
+            plansRegistration.unregister();
+            plansRegistration = null;
+        }
         toggleJmxRegistration(null, PlumberMXBean.class.getName(), false);
         if (monitoredPipes != null){
             for (String path : monitoredPipes.keySet()){
@@ -279,16 +365,15 @@ public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnabl
 
     @Override
     public Pipe getPipe(Resource resource, PipeBindings upperBindings) {
-        if ((resource == null) || !registry.containsKey(resource.getResourceType())) {
+        PipeFactory factory = resource != null ? registry.get(resource.getResourceType()) : null;
+        if (factory == null) {
             log.error("Pipe configuration resource is either null, or its type is not registered");
-        } else {
-            try {
-                Class<? extends Pipe> pipeClass = registry.get(resource.getResourceType());
-                return pipeClass.getDeclaredConstructor(Plumber.class, Resource.class, PipeBindings.class)
-                        .newInstance(this, resource, upperBindings);
-            } catch (Exception e) {
-                log.error("Unable to properly instantiate the pipe configured in {}", resource.getPath(), e);
-            }
+            return null;
+        }
+        try {
+            return factory.create(this, resource, upperBindings);
+        } catch (Exception e) {
+            log.error("Unable to properly instantiate the pipe configured in {}", resource.getPath(), e);
         }
         return null;
     }
@@ -386,6 +471,7 @@ public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnabl
         PipeMonitor monitor = null;
         ExecutionResult result = null;
         long start = System.currentTimeMillis();
+        long monitorStart = 0L;
         try {
             boolean readOnly = false;
             if (additionalBindings != null){
@@ -404,11 +490,11 @@ public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnabl
             if (isRunning(confResource)){
                 throw new IllegalStateException("Pipe is already running");
             }
-            monitor = monitoredPipes.get(confResource.getPath());
             writeStatus(pipe, STATUS_STARTED, null);
             resolver.commit();
+            monitor = monitoredPipes.get(confResource.getPath());
             if (monitor != null){
-                monitor.starts();
+                monitorStart = monitor.starts();
             }
             result = internalExecute(resolver, writer, pipe);
             if (save && pipe.modifiesContent()) {
@@ -418,8 +504,7 @@ public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnabl
                 writer.ends();
             }
             if (monitor != null){
-                monitor.ends();
-                monitor.setLastResult(result);
+                monitor.ends(monitorStart, result);
             }
             success = true;
             return result;
@@ -480,6 +565,10 @@ public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnabl
             log.info("[{}] saving changes...", pipe.getName());
             writeStatus(pipe, currentResource == null ? STATUS_FINISHED : currentResource.getPath(), result);
             resolver.commit();
+            PipeMonitor monitor = monitoredPipes.get(pipe.getResource().getPath());
+            if (monitor != null) {
+                monitor.committed();
+            }
             if (currentResource == null && distributor != null && StringUtils.isNotBlank(pipe.getDistributionAgent())) {
                 log.info("a distribution agent is configured, will try to distribute the changes");
                 DistributionRequest request = new SimpleDistributionRequest(DistributionRequestType.ADD, true, result.getCurrentPathSet().toArray(new String[result.getCurrentPathSet().size()]));
@@ -499,7 +588,14 @@ public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnabl
 
     @Override
     public void registerPipe(String type, Class<? extends BasePipe> pipeClass) {
-        registry.put(type, pipeClass);
+        try {
+            Constructor<? extends BasePipe> constructor = pipeClass.getDeclaredConstructor(Plumber.class, Resource.class, PipeBindings.class);
+            constructor.setAccessible(true);
+            registry.put(type, constructor::newInstance);
+        } catch (NoSuchMethodException | SecurityException e) {
+            throw new IllegalArgumentException(String.format("%s can not be registered as %s, it should have an accessible (Plumber, Resource, PipeBindings) constructor",
+                    pipeClass.getName(), type), e);
+        }
     }
 
     @Override
@@ -553,9 +649,18 @@ public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnabl
         try(ResourceResolver resolver = factory.getServiceResourceResolver(serviceUser)){
             String path = (String)job.getProperty(SlingConstants.PROPERTY_PATH);
             Map<String, Object> bindings = (Map)job.getProperty(PipeBindings.NN_ADDITIONALBINDINGS);
-            OutputWriter writer = new JsonWriter();
-            writer.starts();
-            execute(resolver, path, bindings, writer, true);
+            Path spool = Files.createTempFile("sling-pipes-job-", ".json");
+            try {
+                try (Writer output = Files.newBufferedWriter(spool, StandardCharsets.UTF_8)) {
+                    OutputWriter writer = new JsonWriter(output);
+                    writer.setMax(-1);
+                    writer.starts();
+                    execute(resolver, path, bindings, writer, true);
+                }
+                storeOutput(resolver, path, spool);
+            } finally {
+                Files.deleteIfExists(spool);
+            }
             return JobResult.OK;
         } catch (LoginException e) {
             log.error("unable to retrieve resolver for executing scheduled pipe", e);
@@ -565,6 +670,24 @@ public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnabl
         return JobResult.FAILED;
     }
 
+    /**
+     * stores spooled output of an asynchronous execution as a binary of the pipe
+     * @param resolver resolver of the execution
+     * @param path path of the pipe
+     * @param spool file where output has been written
+     * @throws IOException in case spool file can't be read
+     */
+    void storeOutput(ResourceResolver resolver, String path, Path spool) throws IOException {
+        Resource pipeResource = resolver.getResource(path);
+        ModifiableValueMap vm = pipeResource != null ? pipeResource.adaptTo(ModifiableValueMap.class) : null;
+        if (vm != null) {
+            try (InputStream input = Files.newInputStream(spool)) {
+                vm.put(PN_LAST_OUTPUT, input);
+                resolver.commit();
+            }
+        }
+    }
+
     @Override
     public void refreshMonitoredPipes() {
         Map<String, PipeMonitor> map = new HashMap<>();
@@ -618,7 +741,179 @@ public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnabl
         }
     }
 
+    /**
+     * deletes resources, committing every given number of deletions
+     */
+    private static class PurgeBatch {
+        final ResourceResolver resolver;
+        final int size;
+        int pending;
+        long deleted;
+
+        PurgeBatch(ResourceResolver resolver, int size) {
+            this.resolver = resolver;
+            this.size = Math.max(1, size);
+        }
+
+        void delete(Resource resource) throws PersistenceException {
+            resolver.delete(resource);
+            deleted();
+        }
+
+        void deleted() throws PersistenceException {
+            deleted++;
+            if (++pending >= size) {
+                commit();
+            }
+        }
+
+        void commit() throws PersistenceException {
+            if (pending > 0) {
+                resolver.commit();
+                pending = 0;
+            }
+        }
+    }
+
+    /**
+     * removes pipe instances older than max days: date folders of the layout generated by {@link #generateUniquePath()}
+     * are pruned as soon as their whole period is older than that, only checking the status modification date of the
+     * pipe instances they directly hold, so that pipes still in use (e.g. reused command pipes) are kept. Other
+     * resources are removed depending on their status modification date
+     * @param resolver resolver with which resources are removed
+     * @param now current instant
+     * @param maxDays max age (in days) of a pipe instance
+     * @throws PersistenceException issue while committing removals
+     */
     void purge(ResourceResolver resolver, Instant now, int maxDays) throws PersistenceException {
+        long start = System.currentTimeMillis();
+        Resource root = resolver.getResource(PIPES_REPOSITORY_PATH);
+        PurgeBatch batch = new PurgeBatch(resolver, configuration.bufferSize());
+        if (root != null) {
+            ZonedDateTime threshold = now.atZone(ZoneId.systemDefault()).minusDays(maxDays + 1L);
+            for (Resource child : toList(root.listChildren())) {
+                LocalDate year = bucketStart(null, ChronoUnit.YEARS, child.getName());
+                if (year != null) {
+                    purgeBucket(child, year, ChronoUnit.YEARS, threshold, batch);
+                } else {
+                    purgeByStatus(child, now, maxDays, batch);
+                }
+            }
+        }
+        batch.commit();
+        lastPurgeDeletedResources = batch.deleted;
+        lastPurgeDuration = System.currentTimeMillis() - start;
+        log.info("purge done, {} resources removed in {}ms", lastPurgeDeletedResources, lastPurgeDuration);
+    }
+
+    /**
+     * @param parentStart start of the parent folder period, null for a year folder
+     * @param unit period of the folder
+     * @param name name of the folder, as generated by {@link #generateUniquePath()} (months being 0 based)
+     * @return start of the folder period, or null if name does not correspond to that layout
+     */
+    static LocalDate bucketStart(LocalDate parentStart, ChronoUnit unit, String name) {
+        if (!StringUtils.isNumeric(name) || name.length() > 4) {
+            return null;
+        }
+        int value = Integer.parseInt(name);
+        try {
+            if (unit == ChronoUnit.YEARS) {
+                return LocalDate.of(value, 1, 1);
+            }
+            return unit == ChronoUnit.MONTHS ? parentStart.withMonth(value + 1) : parentStart.withDayOfMonth(value);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param path path of a pipe instance
+     * @param now current instant
+     * @return true if that pipe is in a date folder older than max age, that a purge could remove at any time
+     */
+    boolean isInExpiredBucket(String path, Instant now) {
+        String prefix = PIPES_REPOSITORY_PATH + SLASH;
+        if (path.startsWith(prefix)) {
+            String[] segments = path.substring(prefix.length()).split(SLASH);
+            if (segments.length > 3) {
+                LocalDate year = bucketStart(null, ChronoUnit.YEARS, segments[0]);
+                LocalDate month = year != null ? bucketStart(year, ChronoUnit.MONTHS, segments[1]) : null;
+                LocalDate day = month != null ? bucketStart(month, ChronoUnit.DAYS, segments[2]) : null;
+                if (day != null) {
+                    ZonedDateTime threshold = now.atZone(ZoneId.systemDefault()).minusDays(configuration.maxAge());
+                    return !day.plusDays(1).atStartOfDay(threshold.getZone()).isAfter(threshold);
+                }
+            }
+        }
+        return false;
+    }
+
+    private static ChronoUnit subUnit(ChronoUnit unit) {
+        return unit == ChronoUnit.YEARS ? ChronoUnit.MONTHS : ChronoUnit.DAYS;
+    }
+
+    private static List<Resource> toList(Iterator<Resource> resources) {
+        List<Resource> list = new ArrayList<>();
+        resources.forEachRemaining(list::add);
+        return list;
+    }
+
+    /**
+     * removes a date folder if its whole period is older than threshold, or its children that are
+     * @param bucket date folder
+     * @param start start of the folder period
+     * @param unit period of the folder
+     * @param threshold date before which pipe instances should be removed
+     * @param batch current removal batch
+     * @throws PersistenceException issue while committing removals
+     */
+    private void purgeBucket(Resource bucket, LocalDate start, ChronoUnit unit, ZonedDateTime threshold, PurgeBatch batch) throws PersistenceException {
+        if (!start.plus(1, unit).atStartOfDay(threshold.getZone()).isAfter(threshold)) {
+            log.debug("removing {}", bucket.getPath());
+            deleteBucket(bucket, unit, threshold, batch);
+        } else if (unit != ChronoUnit.DAYS) {
+            for (Resource child : toList(bucket.listChildren())) {
+                LocalDate childStart = bucketStart(start, subUnit(unit), child.getName());
+                if (childStart != null) {
+                    purgeBucket(child, childStart, subUnit(unit), threshold, batch);
+                }
+            }
+        }
+    }
+
+    /**
+     * removes a date folder, and its pipe instances one by one so that commits stay bounded, keeping the ones whose
+     * status has been modified after threshold
+     * @return true if the folder has been removed
+     */
+    private boolean deleteBucket(Resource bucket, ChronoUnit unit, ZonedDateTime threshold, PurgeBatch batch) throws PersistenceException {
+        boolean empty = true;
+        for (Resource child : toList(bucket.listChildren())) {
+            if (unit != ChronoUnit.DAYS && StringUtils.isNumeric(child.getName())) {
+                empty &= deleteBucket(child, subUnit(unit), threshold, batch);
+            } else if (isModifiedAfter(child, threshold)) {
+                log.debug("keeping {}, still in use", child.getPath());
+                empty = false;
+            } else {
+                batch.delete(child);
+            }
+        }
+        if (empty) {
+            batch.delete(bucket);
+        }
+        return empty;
+    }
+
+    private static boolean isModifiedAfter(Resource pipe, ZonedDateTime threshold) {
+        Calendar cal = pipe.getValueMap().get(PN_STATUS_MODIFIED, Calendar.class);
+        return cal != null && cal.toInstant().isAfter(threshold.toInstant());
+    }
+
+    /**
+     * removes pipe instances out of the date layout, whose status is older than max days
+     */
+    private void purgeByStatus(Resource resource, Instant now, int maxDays, PurgeBatch batch) throws PersistenceException {
         final Collection<String> pipesToRemove = new ArrayList<>();
         AbstractResourceVisitor visitor = new AbstractResourceVisitor() {
             @Override
@@ -629,22 +924,50 @@ public class PlumberImpl implements Plumber, JobConsumer, PlumberMXBean, Runnabl
                 }
             }
         };
-        visitor.accept(resolver.getResource(PIPES_REPOSITORY_PATH));
+        visitor.accept(resource);
         if (!pipesToRemove.isEmpty()) {
             log.info("about to remove {} pipe instances", pipesToRemove.size());
             for (String path : pipesToRemove) {
-                cleanResourceAndEmptyParents(resolver.getResource(path));
+                Resource pipe = resource.getResourceResolver().getResource(path);
+                if (pipe != null) {
+                    cleanResourceAndEmptyParents(pipe);
+                    batch.deleted();
+                }
             }
-            resolver.commit();
-            log.info("purge done.");
         }
     }
 
+    @Override
+    public long getLastPurgeDeletedResources() {
+        return lastPurgeDeletedResources;
+    }
+
+    @Override
+    public long getLastPurgeDuration() {
+        return lastPurgeDuration;
+    }
+
     @Override
     public boolean allowAdditionalScripts() {
         return configuration.allow_additional_scripts();
     }
 
+    /**
+     * @return directory where remote inputs of pipes having httpCache set are cached
+     */
+    public Path getHttpCacheDirectory() {
+        String directory = configuration.httpCacheDirectory();
+        return StringUtils.isBlank(directory) ? Paths.get(System.getProperty("java.io.tmpdir"), "sling-pipes-http-cache")
+                : Paths.get(directory);
+    }
+
+    /**
+     * @return max size in bytes of cached remote inputs
+     */
+    public long getHttpCacheMaxSize() {
+        return configuration.httpCacheMaxSize();
+    }
+
     @Override
     public void run() {
         if (serviceUser == null) {
@@ -34,6 +34,8 @@ import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
@@ -52,10 +54,13 @@ import java.util.Map;
                 ServletResolverConstants.SLING_SERVLET_METHODS + "=GET",
                 ServletResolverConstants.SLING_SERVLET_METHODS + "=POST",
                 ServletResolverConstants.SLING_SERVLET_EXTENSIONS + "=json",
-                ServletResolverConstants.SLING_SERVLET_EXTENSIONS + "=csv"
+                ServletResolverConstants.SLING_SERVLET_EXTENSIONS + "=csv",
+                ServletResolverConstants.SLING_SERVLET_EXTENSIONS + "=ndjson"
         })
 @Designate(ocd = PlumberServlet.Configuration.class)
 public class PlumberServlet extends AbstractPlumberServlet {
+    private static final Logger log = LoggerFactory.getLogger(PlumberServlet.class);
+
     public static final String RESOURCE_TYPE = "slingPipes/plumber";
 
     static final String PARAM_PATH = "path";
@@ -119,6 +124,8 @@ public class PlumberServlet extends AbstractPlumberServlet {
      */
     void execute(SlingHttpServletRequest request, SlingHttpServletResponse response, boolean writeAllowed) throws ServletException {
         String path = request.getResource().getResourceType().equals(RESOURCE_TYPE) ? request.getParameter(PARAM_PATH) : request.getResource().getPath();
+        SlingHttpServletResponse output = response;
+        boolean succeeded = false;
         try {
             if (StringUtils.isBlank(path)) {
                 throw new IllegalArgumentException("path should be provided");
@@ -134,15 +141,24 @@ public class PlumberServlet extends AbstractPlumberServlet {
                     response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Some issue with your request, or server not being ready for async execution");
                 }
             } else {
-                OutputWriter writer = getWriter(request, response);
+                output = compress(request, response);
+                OutputWriter writer = getWriter(request, output);
                 plumber.execute(request.getResourceResolver(), path, bindings, writer, true);
+                succeeded = true;
             }
         }
         catch (AccessControlException e) {
-            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            output.setStatus(HttpServletResponse.SC_FORBIDDEN);
         }
         catch (Exception e) {
             throw new ServletException(e);
         }
+        finally {
+            try {
+                finish(output, succeeded);
+            } catch (IOException e) {
+                log.error("unable to end response", e);
+            }
+        }
     }
 }
\ No newline at end of file
@@ -26,7 +26,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jcr.Node;
-import javax.jcr.NodeIterator;
 import javax.jcr.Property;
 import javax.jcr.RepositoryException;
 
@@ -45,11 +44,12 @@ public class RemovePipe extends BasePipe {
      * In case input resource is a node and configuration is set, only configured properties,
      * and subtrees will be removed
      */
-    Resource filter;
+    PipePlan filter;
 
     public RemovePipe(Plumber plumber, Resource resource, PipeBindings upperBindings) {
         super(plumber, resource, upperBindings);
-        filter = getConfiguration();
+        Resource configuration = getConfiguration();
+        filter = configuration != null ? PipePlan.of(plumber, configuration) : null;
     }
 
     @Override
@@ -100,12 +100,12 @@ public class RemovePipe extends BasePipe {
      * remove properties, returns the number of properties that were configured to be removed
      * @return
      */
-    private int removeProperties(Resource resource, Resource configuration) throws RepositoryException {
+    private int removeProperties(Resource resource, PipePlan configuration) throws RepositoryException {
         int count = 0;
         if (configuration != null) {
             Node node = resource.adaptTo(Node.class);
             if (node != null) {
-                ValueMap configuredProperties = configuration.getValueMap();
+                ValueMap configuredProperties = configuration.getProperties();
                 for (String key : configuredProperties.keySet()){
                     if (removeProperty(node, key)) {
                         count ++;
@@ -130,20 +130,17 @@ public class RemovePipe extends BasePipe {
         return resource.getPath();
     }
 
-    private String removeTree(Resource resource, Resource configuration) throws RepositoryException {
+    private String removeTree(Resource resource, PipePlan configuration) throws RepositoryException {
         logger.debug("removing tree {}", resource.getPath());
         String remainingPath = resource.getPath();
         int configuredProperties = removeProperties(resource, configuration);
-        Node configuredNode = configuration != null ? configuration.adaptTo(Node.class) : null;
-        NodeIterator childConf = configuredNode != null ? configuredNode.getNodes() : null;
-        if (childConf == null || (! childConf.hasNext() && configuredProperties == 0)){
+        if (configuration == null || (! configuration.hasChildren() && configuredProperties == 0)){
             remainingPath = removeNode(resource);
         } else {
-            while (childConf.hasNext()) {
-                Node childToRemove = childConf.nextNode();
+            for (PipePlan childToRemove : configuration.getChildren()) {
                 Resource child = resource.getChild(childToRemove.getName());
                 if (child != null){
-                    removeTree(child, configuration.getChild(childToRemove.getName()));
+                    removeTree(child, childToRemove);
                 }
             }
         }
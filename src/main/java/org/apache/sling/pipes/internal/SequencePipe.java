@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes.internal;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.pipes.Pipe;
+import org.apache.sling.pipes.PipeBindings;
+import org.apache.sling.pipes.Plumber;
+import org.apache.sling.pipes.SuperPipe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This pipe executes the pipes it has in its configuration one after the other, sharing its bindings with them;
+ * its output is the concatenation of their outputs, in their configuration order
+ */
+public class SequencePipe extends SuperPipe {
+    private static final Logger log = LoggerFactory.getLogger(SequencePipe.class);
+
+    public static final String RESOURCE_TYPE = "slingPipes/sequence";
+
+    /**
+     * Constructor
+     * @param plumber plumber
+     * @param resource sequence's configuration resource
+     * @param upperBindings pipe bindings
+     */
+    public SequencePipe(Plumber plumber, Resource resource, PipeBindings upperBindings) {
+        super(plumber, resource, upperBindings);
+    }
+
+    @Override
+    public void buildChildren() {
+        for (Iterator<Resource> childPipeResources = getConfiguration().listChildren(); childPipeResources.hasNext();){
+            Resource pipeResource = childPipeResources.next();
+            Pipe pipe = plumber.getPipe(pipeResource, bindings);
+            if (pipe == null) {
+                log.error("configured pipe {} is either not registered, or not computable by the plumber", pipeResource.getPath());
+            } else {
+                pipe.setParent(this.getParent());
+                subpipes.add(pipe);
+            }
+        }
+    }
+
+    @Override
+    protected Iterator<Resource> computeSubpipesOutput() {
+        return new SequenceIterator();
+    }
+
+    /**
+     * iterates through each subpipe output, only computing it once previous one is exhausted
+     */
+    private class SequenceIterator implements Iterator<Resource> {
+        private int cursor = -1;
+        private Iterator<Resource> current = EMPTY_ITERATOR;
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && cursor < subpipes.size() - 1) {
+                Pipe pipe = subpipes.get(++cursor);
+                log.debug("switching to {}", pipe);
+                current = pipe.getOutput();
+            }
+            return current.hasNext();
+        }
+
+        @Override
+        public Resource next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+}
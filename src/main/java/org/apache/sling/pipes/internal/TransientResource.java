@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes.internal;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.AbstractResource;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceMetadata;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.wrappers.ModifiableValueMapDecorator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.apache.jackrabbit.JcrConstants.JCR_PRIMARYTYPE;
+import static org.apache.sling.api.resource.ResourceResolver.PROPERTY_RESOURCE_TYPE;
+import static org.apache.sling.pipes.BasePipe.SLASH;
+
+/**
+ * in memory resource, holding a pipe configuration tree that is never persisted.
+ * Its resolver is the one of the execution, so that pipes still read and write actual content with it
+ */
+class TransientResource extends AbstractResource {
+
+    private final ResourceResolver resolver;
+
+    private final String path;
+
+    private final TransientResource parent;
+
+    private final ModifiableValueMap properties = new ModifiableValueMapDecorator(new LinkedHashMap<>());
+
+    private final Map<String, TransientResource> children = new LinkedHashMap<>();
+
+    private final ResourceMetadata metadata = new ResourceMetadata();
+
+    /**
+     * @param resolver resolver the pipe will be executed with
+     * @param path path of the configuration root, that should not exist in the repository
+     */
+    TransientResource(ResourceResolver resolver, String path) {
+        this(resolver, path, null);
+    }
+
+    private TransientResource(ResourceResolver resolver, String path, TransientResource parent) {
+        this.resolver = resolver;
+        this.path = path;
+        this.parent = parent;
+        metadata.setResolutionPath(path);
+    }
+
+    /**
+     * creates, or merges, the resource at given relative path, with given properties. Like when persisting the
+     * configuration, properties whose name contains a slash are set on the corresponding descendant.
+     * @param relativePath path of the resource, relative to this one
+     * @param data properties of the resource
+     * @return created or merged resource
+     */
+    TransientResource create(String relativePath, Map<String, Object> data) {
+        TransientResource resource = this;
+        for (String name : StringUtils.split(relativePath, SLASH)) {
+            TransientResource child = resource.children.get(name);
+            if (child == null) {
+                child = new TransientResource(resolver, resource.path + SLASH + name, resource);
+                resource.children.put(name, child);
+            }
+            resource = child;
+        }
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            if (entry.getKey().contains(SLASH)) {
+                resource.create(StringUtils.substringBeforeLast(entry.getKey(), SLASH),
+                        Collections.singletonMap(StringUtils.substringAfterLast(entry.getKey(), SLASH), entry.getValue()));
+            } else {
+                resource.properties.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return resource;
+    }
+
+    @Override
+    public @NotNull String getPath() {
+        return path;
+    }
+
+    @Override
+    public @NotNull String getResourceType() {
+        String type = properties.get(PROPERTY_RESOURCE_TYPE, String.class);
+        if (StringUtils.isBlank(type)) {
+            type = properties.get(JCR_PRIMARYTYPE, Resource.RESOURCE_TYPE_NON_EXISTING);
+        }
+        return type;
+    }
+
+    @Override
+    public @Nullable String getResourceSuperType() {
+        return null;
+    }
+
+    @Override
+    public @NotNull ResourceMetadata getResourceMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public @NotNull ResourceResolver getResourceResolver() {
+        return resolver;
+    }
+
+    @Override
+    public @Nullable Resource getParent() {
+        return parent != null ? parent : resolver.getResource(ResourceUtil.getParent(path));
+    }
+
+    @Override
+    public Resource getChild(@NotNull String relPath) {
+        if (relPath.startsWith(SLASH)) {
+            return resolver.getResource(relPath);
+        }
+        TransientResource resource = this;
+        for (String name : StringUtils.split(relPath, SLASH)) {
+            resource = resource.children.get(name);
+            if (resource == null) {
+                return null;
+            }
+        }
+        return resource;
+    }
+
+    @Override
+    public @NotNull Iterator<Resource> listChildren() {
+        return new ArrayList<Resource>(children.values()).iterator();
+    }
+
+    @Override
+    public boolean hasChildren() {
+        return !children.isEmpty();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <AdapterType> AdapterType adaptTo(@NotNull Class<AdapterType> type) {
+        if (type == ValueMap.class || type == ModifiableValueMap.class || type == Map.class) {
+            return (AdapterType) properties;
+        }
+        return super.adaptTo(type);
+    }
+}
@@ -17,7 +17,10 @@
 package org.apache.sling.pipes.internal;
 
 import org.apache.commons.collections4.IteratorUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.jackrabbit.JcrConstants;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.pipes.BasePipe;
 import org.apache.sling.pipes.PipeBindings;
@@ -30,16 +33,52 @@ import javax.jcr.Property;
 import javax.jcr.PropertyIterator;
 import javax.jcr.RepositoryException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.sling.pipes.internal.ManifoldPipe.PN_NUM_THREADS;
+import static org.apache.sling.pipes.internal.ManifoldPipe.PN_QUEUE_SIZE;
 
 /**
- * Traverse either nodes or properties, in breadth first or depth first, for properties, they can be white listed
+ * Traverse either nodes or properties, in breadth first or depth first, for properties, they can be white listed;
+ * subtrees can be pruned by node name or type, either skipping them entirely or stopping descent below a match
  */
 public class TraversePipe extends BasePipe {
     private static final Logger LOGGER = LoggerFactory.getLogger(TraversePipe.class);
     public static final String RESOURCE_TYPE = RT_PREFIX + "traverse";
 
+    /**
+     * if true, subtrees below <code>splitDepth</code> are traversed concurrently, each with its own resolver
+     */
+    public static final String PN_PARALLEL = "parallel";
+
+    /**
+     * relative depth at which the traversed tree is split in concurrent subtree tasks
+     */
+    public static final String PN_SPLIT_DEPTH = "splitDepth";
+
+    /**
+     * if true (default), parallel output keeps the order of a sequential depth first traversal, breadth first
+     * traversal being ordered level by level within each subtree only
+     */
+    public static final String PN_ORDERED = "ordered";
+
+    public static final int SPLIT_DEPTH_DEFAULT = 1;
+    public static final int QUEUE_SIZE_DEFAULT = 1000;
+    private static final int OFFER_TIMEOUT_MS = 100;
+    // marker put in a queue once a subtree task is done pushing paths
+    private static final String END_OF_SUBTREE = "";
+
+    ParallelTraversingIterator parallelIterator;
+
     /**
      * Pipe Constructor
      *
@@ -54,56 +93,120 @@ public class TraversePipe extends BasePipe {
 
     @Override
     protected Iterator<Resource> computeOutput() {
+        cancelParallelTraversal();
+        if (properties.get(PN_PARALLEL, false)) {
+            parallelIterator = new ParallelTraversingIterator(getInput(), getResource().getValueMap());
+            return parallelIterator;
+        }
         return new TraversingIterator(getInput(), getResource().getValueMap());
     }
 
+    @Override
+    public void after() {
+        super.after();
+        cancelParallelTraversal();
+    }
+
+    /**
+     * stops a running parallel traversal, if any, e.g. when downstream stopped consuming its output
+     */
+    void cancelParallelTraversal() {
+        if (parallelIterator != null) {
+            parallelIterator.cancel();
+            parallelIterator = null;
+        }
+    }
+
     /**
-     * iterative DFS or BFS jcr node tree iterator, transforming each visited node in a configured set of resources
+     * iterative DFS or BFS resource tree iterator, transforming each visited resource in a configured set of resources;
+     * tree is walked with the resource API, JCR only being used for enumerating properties, if configured so
      */
     public class TraversingIterator implements Iterator<Resource>{
         protected static final String PN_PROPERTIES = "properties";
         protected static final String PN_NAMEGLOBS = "nameGlobs";
         protected static final String PN_BREADTH = "breadthFirst";
         protected static final String PN_DEPTH = "depth";
+        protected static final String PN_SKIP_NAMES = "skipNames";
+        protected static final String PN_SKIP_TYPES = "skipTypes";
+        protected static final String PN_STOP_NAMES = "stopNames";
+        protected static final String PN_STOP_TYPES = "stopTypes";
         boolean properties;
         int initialLevel;
         int maxLevel;
         String[] nameGlobs;
         boolean breadthFirst;
+        String[] skipNames;
+        String[] skipTypes;
+        String[] stopNames;
+        String[] stopTypes;
         Iterator<Resource> currentResources;
-        List<Node> nodesToVisit = new ArrayList<>();
+        List<Resource> resourcesToVisit = new ArrayList<>();
 
         /**
-         * From a given node, refresh resources extracted out of it depending on configuration
-         * @param node
+         * From a given resource, refresh resources extracted out of it depending on configuration
+         * @param resource visited resource
          * @throws RepositoryException
          */
-        void refreshResourceIterator(Node node) throws RepositoryException {
+        void refreshResourceIterator(Resource resource) throws RepositoryException {
             if (properties){
+                Node node = resource.adaptTo(Node.class);
+                if (node == null) {
+                    LOGGER.debug("{} is not a node, no property to extract from it", resource.getPath());
+                    currentResources = IteratorUtils.emptyIterator();
+                    return;
+                }
+                ResourceResolver traversalResolver = resource.getResourceResolver();
                 PropertyIterator it = nameGlobs != null ? node.getProperties(nameGlobs) : node.getProperties();
                 currentResources = IteratorUtils.transformedIterator(it, o -> {
                     try {
-                        return resolver.getResource(((Property) o).getPath());
+                        return traversalResolver.getResource(((Property) o).getPath());
                     } catch (RepositoryException e) {
                         LOGGER.error("unable to read property", e);
                     }
                     return null;
                 });
             } else {
-                currentResources = IteratorUtils.singletonIterator(resolver.getResource(node.getPath()));
+                currentResources = IteratorUtils.singletonIterator(resource);
             }
         }
 
-        int getDepth(String path) {
-            return path.split("/").length;
+        boolean isBeforeLastLevel(Resource resource) {
+            return maxLevel < 0 || getDepth(resource.getPath()) < maxLevel;
+        }
+
+        /**
+         * @param resource resource to test
+         * @param names name globs
+         * @param types globs on primary or resource type
+         * @return true if resource's name, primary type or resource type matches one of the given globs
+         */
+        boolean matches(Resource resource, String[] names, String[] types) {
+            if (names != null && Arrays.stream(names).anyMatch(glob -> FilenameUtils.wildcardMatch(resource.getName(), glob))) {
+                return true;
+            }
+            if (types != null) {
+                String primaryType = resource.getValueMap().get(JcrConstants.JCR_PRIMARYTYPE, String.class);
+                String resourceType = resource.getResourceType();
+                return Arrays.stream(types).anyMatch(glob -> (primaryType != null && FilenameUtils.wildcardMatch(primaryType, glob))
+                        || (resourceType != null && FilenameUtils.wildcardMatch(resourceType, glob)));
+            }
+            return false;
         }
 
-        boolean isBeforeLastLevel(Node node) throws RepositoryException {
-            return maxLevel < 0 || getDepth(node.getPath()) < maxLevel;
+        /**
+         * @param resource visited resource
+         * @return children of the resource that should be visited, pruned subtrees being neither output nor loaded
+         */
+        List<Resource> getChildrenToVisit(Resource resource) {
+            if (!isBeforeLastLevel(resource) || matches(resource, stopNames, stopTypes)) {
+                return Collections.emptyList();
+            }
+            return IteratorUtils.toList(IteratorUtils.filteredIterator(resource.listChildren(),
+                    child -> !matches(child, skipNames, skipTypes)));
         }
 
         /**
-         * Constructor with root node, & configuration
+         * Constructor with root resource, & configuration
          * @param root
          * @param configuration
          */
@@ -113,31 +216,51 @@ public class TraversePipe extends BasePipe {
                 nameGlobs = configuration.get(PN_NAMEGLOBS, String[].class);
             }
             breadthFirst = configuration.get(PN_BREADTH, false);
+            skipNames = configuration.get(PN_SKIP_NAMES, String[].class);
+            skipTypes = configuration.get(PN_SKIP_TYPES, String[].class);
+            stopNames = configuration.get(PN_STOP_NAMES, String[].class);
+            stopTypes = configuration.get(PN_STOP_TYPES, String[].class);
             maxLevel = configuration.get(PN_DEPTH, -1);
             if (maxLevel > 0){
                 initialLevel = getDepth(root.getPath());
                 maxLevel = initialLevel + maxLevel;
             }
-            nodesToVisit.add(root.adaptTo(Node.class));
+            resourcesToVisit.add(root);
         }
 
         /**
-         * Navigate up to the next node that have resources out of it
+         * Constructor used for traversing a subtree of a wider traversal
+         * @param root root resource of the subtree, whose resolver is used for the whole subtree
+         * @param settings settings of the wider traversal
+         * @param maxLevel absolute level after which traversal stops, negative for no limit
+         */
+        TraversingIterator(Resource root, TraversingIterator settings, int maxLevel) {
+            properties = settings.properties;
+            nameGlobs = settings.nameGlobs;
+            breadthFirst = settings.breadthFirst;
+            skipNames = settings.skipNames;
+            skipTypes = settings.skipTypes;
+            stopNames = settings.stopNames;
+            stopTypes = settings.stopTypes;
+            this.maxLevel = maxLevel;
+            resourcesToVisit.add(root);
+        }
+
+        /**
+         * Navigate up to the next resource that have resources out of it
          * @return
          */
         boolean goToNextElligibleNode() {
             try {
-                while ((currentResources == null || !currentResources.hasNext()) && !nodesToVisit.isEmpty()) {
-                    Node node = nodesToVisit.remove(0);
-                    LOGGER.debug("visiting {}", node.getPath());
-                    refreshResourceIterator(node);
-                    int indexAdd = breadthFirst ? nodesToVisit.size() : 0;
-                    if (isBeforeLastLevel(node)) {
-                        nodesToVisit.addAll(indexAdd, IteratorUtils.toList(node.getNodes()));
-                    }
+                while ((currentResources == null || !currentResources.hasNext()) && !resourcesToVisit.isEmpty()) {
+                    Resource resource = resourcesToVisit.remove(0);
+                    LOGGER.debug("visiting {}", resource.getPath());
+                    refreshResourceIterator(resource);
+                    int indexAdd = breadthFirst ? resourcesToVisit.size() : 0;
+                    resourcesToVisit.addAll(indexAdd, getChildrenToVisit(resource));
                 }
             } catch (RepositoryException e) {
-                LOGGER.error("unable to read node subpipes", e);
+                LOGGER.error("unable to read node properties", e);
             }
             return currentResources != null && currentResources.hasNext();
         }
@@ -152,4 +275,201 @@ public class TraversePipe extends BasePipe {
             return currentResources.next();
         }
     }
+
+    static int getDepth(String path) {
+        return path.split("/").length;
+    }
+
+    /**
+     * Traversal splitting the tree at <code>splitDepth</code>: nodes above that depth are visited by the calling thread,
+     * each subtree below is traversed by a pool thread with its own cloned resolver, pushing visited paths in a bounded
+     * queue. Subtree tasks are submitted in traversal order to a FIFO pool, so in ordered mode the subtree being read
+     * is always either running or done.
+     */
+    class ParallelTraversingIterator implements Iterator<Resource> {
+        final TraversingIterator settings;
+        final int splitLevel;
+        final int queueSize;
+        final boolean ordered;
+        final ExecutorService executorService;
+        volatile boolean cancelled = false;
+        List<Iterator<? extends Resource>> segments = new ArrayList<>();
+        SubtreeQueueIterator sharedQueue;
+        Iterator<Resource> currentSegment;
+        Resource nextItem;
+
+        ParallelTraversingIterator(Resource root, ValueMap configuration) {
+            settings = new TraversingIterator(root, configuration);
+            splitLevel = getDepth(root.getPath()) + configuration.get(PN_SPLIT_DEPTH, SPLIT_DEPTH_DEFAULT);
+            queueSize = configuration.get(PN_QUEUE_SIZE, QUEUE_SIZE_DEFAULT);
+            ordered = configuration.get(PN_ORDERED, true);
+            executorService = Executors.newFixedThreadPool(configuration.get(PN_NUM_THREADS, ManifoldPipe.NUM_THREADS_DEFAULT));
+            if (!ordered) {
+                sharedQueue = new SubtreeQueueIterator(new LinkedBlockingQueue<>(queueSize));
+            }
+            try {
+                split(root);
+            } finally {
+                executorService.shutdown();
+            }
+            if (sharedQueue != null) {
+                segments.add(sharedQueue);
+            }
+            currentSegment = IteratorUtils.chainedIterator(segments);
+        }
+
+        /**
+         * visits nodes above split level, in configured order, registering one segment per visited node, and
+         * submitting one task per subtree rooted at split level
+         * @param root traversal root
+         */
+        void split(Resource root) {
+            List<Resource> resourcesToSplit = new ArrayList<>();
+            resourcesToSplit.add(root);
+            while (!resourcesToSplit.isEmpty()) {
+                Resource resource = resourcesToSplit.remove(0);
+                int level = getDepth(resource.getPath());
+                if (level >= splitLevel) {
+                    submitSubtree(resource.getPath());
+                } else {
+                    segments.add(new TraversingIterator(resource, settings, level));
+                    int indexAdd = settings.breadthFirst ? resourcesToSplit.size() : 0;
+                    resourcesToSplit.addAll(indexAdd, settings.getChildrenToVisit(resource));
+                }
+            }
+        }
+
+        void submitSubtree(String path) {
+            SubtreeQueueIterator target = sharedQueue;
+            if (target == null) {
+                target = new SubtreeQueueIterator(new LinkedBlockingQueue<>(queueSize));
+                segments.add(target);
+            }
+            target.pendingTasks++;
+            final BlockingQueue<String> queue = target.queue;
+            executorService.execute(() -> traverseSubtree(path, queue));
+        }
+
+        /**
+         * traverses a subtree with a cloned resolver, pushing each visited path to the given queue
+         * @param path subtree root path
+         * @param queue queue where visited paths are pushed
+         */
+        void traverseSubtree(String path, BlockingQueue<String> queue) {
+            if (cancelled) {
+                return;
+            }
+            try (ResourceResolver subtreeResolver = resolver.clone(null)) {
+                Resource subtreeRoot = subtreeResolver.getResource(path);
+                if (subtreeRoot != null) {
+                    Iterator<Resource> iterator = new TraversingIterator(subtreeRoot, settings, settings.maxLevel);
+                    while (!cancelled && iterator.hasNext()) {
+                        Resource visited = iterator.next();
+                        if (visited != null) {
+                            push(queue, visited.getPath());
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOGGER.debug("traversal of {} has been interrupted", path);
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                if (cancelled) {
+                    LOGGER.debug("traversal of {} has been cancelled", path);
+                } else {
+                    LOGGER.error("unable to traverse {}", path, e);
+                }
+            } finally {
+                try {
+                    push(queue, END_OF_SUBTREE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * waits for room in the queue, giving up if traversal has been cancelled
+         */
+        void push(BlockingQueue<String> queue, String path) throws InterruptedException {
+            while (!cancelled && !queue.offer(path, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                LOGGER.trace("queue is full, waiting for downstream to consume");
+            }
+        }
+
+        /**
+         * stops all subtree tasks, and drops any pending result
+         */
+        void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                executorService.shutdownNow();
+                segments.clear();
+                currentSegment = IteratorUtils.emptyIterator();
+                nextItem = null;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (nextItem == null && !cancelled && currentSegment.hasNext()) {
+                nextItem = currentSegment.next();
+            }
+            return nextItem != null;
+        }
+
+        @Override
+        public Resource next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Resource toReturn = nextItem;
+            nextItem = null;
+            return toReturn;
+        }
+
+        /**
+         * reads paths pushed by one or more subtree tasks, and resolves them with the pipe's resolver
+         */
+        class SubtreeQueueIterator implements Iterator<Resource> {
+            final BlockingQueue<String> queue;
+            int pendingTasks = 0;
+            String nextPath;
+
+            SubtreeQueueIterator(BlockingQueue<String> queue) {
+                this.queue = queue;
+            }
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    while (nextPath == null && pendingTasks > 0 && !cancelled) {
+                        String path = queue.poll(OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                        if (path == null) {
+                            LOGGER.trace("queue is empty, waiting for subtree traversal");
+                        } else if (END_OF_SUBTREE.equals(path)) {
+                            pendingTasks--;
+                        } else {
+                            nextPath = path;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    LOGGER.error("Interrupted while retrieving traversal output", e);
+                    Thread.currentThread().interrupt();
+                    cancel();
+                }
+                return nextPath != null;
+            }
+
+            @Override
+            public Resource next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String path = nextPath;
+                nextPath = null;
+                return resolver.getResource(path);
+            }
+        }
+    }
 }
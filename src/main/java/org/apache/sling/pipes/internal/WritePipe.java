@@ -28,7 +28,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jcr.Node;
-import javax.jcr.NodeIterator;
 import javax.jcr.Property;
 import javax.jcr.RepositoryException;
 import java.util.ArrayList;
@@ -49,7 +48,7 @@ public class WritePipe extends BasePipe {
     protected static final Pattern ADD_PATCH = Pattern.compile("\\+\\[(.*)\\]");
     protected static final Pattern MULTI = Pattern.compile("\\[(.*)\\]");
 
-    Node confTree;
+    PipePlan confTree;
     private List<Resource> propertiesToRemove;
 
     /**
@@ -62,7 +61,7 @@ public class WritePipe extends BasePipe {
         super(plumber, resource, upperBindings);
     }
 
-    Node getConfTree() {
+    PipePlan getConfTree() {
         if (confTree == null) {
             if (getConfiguration() == null) {
                 String pathCandidate = getExpr();
@@ -71,12 +70,12 @@ public class WritePipe extends BasePipe {
                 }
                 Resource candidate = resolver.getResource(pathCandidate);
                 if (candidate != null) {
-                    return candidate.adaptTo(Node.class);
+                    return PipePlan.of(plumber, candidate);
                 } else {
                     throw new IllegalArgumentException("write pipe expression" + pathCandidate + " does not refer to any existing resource");
                 }
             } else {
-                confTree = getConfiguration().adaptTo(Node.class);
+                confTree = PipePlan.of(plumber, getConfiguration());
             }
         }
         return confTree;
@@ -159,11 +158,11 @@ public class WritePipe extends BasePipe {
      * Write properties from the configuration to the target resource,
      * instantiating both property names & values
      *
-     * @param conf configured resource that holds all properties to write (and subpipes)
+     * @param conf configuration that holds all properties to write (and subpipes)
      * @param target target resource on which configured values will be written
      */
-    private void copyProperties(@Nullable Resource conf, Resource target)  {
-        ValueMap writeMap = conf != null ? conf.adaptTo(ValueMap.class) : null;
+    private void copyProperties(@Nullable PipePlan conf, Resource target)  {
+        ValueMap writeMap = conf != null ? conf.getProperties() : null;
         ModifiableValueMap targetProperties = target.adaptTo(ModifiableValueMap.class);
         boolean modified = false;
 
@@ -196,13 +195,13 @@ public class WritePipe extends BasePipe {
         }
     }
 
-    private void copyNode(Node source, Node targetNode) throws RepositoryException {
+    private void copyNode(PipePlan source, Node targetNode) throws RepositoryException {
         String name = source.getName();
         name = bindings.conditionalString(name);
         if (name == null) {
             logger.debug("name has been instantiated as null, not writing that tree");
         } else if (!isDryRun()){
-            Node childTarget = targetNode.hasNode(name) ? targetNode.getNode(name) : targetNode.addNode(name, source.getPrimaryNodeType().getName());
+            Node childTarget = targetNode.hasNode(name) ? targetNode.getNode(name) : targetNode.addNode(name, source.getPrimaryType());
             logger.debug("writing tree {}", childTarget.getPath());
             writeTree(source, resolver.getResource(childTarget.getPath()));
         }
@@ -210,19 +209,17 @@ public class WritePipe extends BasePipe {
 
     /**
      * write the configured tree at the target resource, creating each node if needed, copying values.
-     * @param conf configuration JCR tree to write to target resource
+     * @param conf configuration tree to write to target resource
      * @param target target resource to write
      */
-    private void writeTree(Node conf, Resource target) throws RepositoryException {
-        copyProperties(resolver.getResource(conf.getPath()), target);
-        NodeIterator childrenConf = conf.getNodes();
-        Node targetNode = target.adaptTo(Node.class);
-        if (childrenConf.hasNext() && targetNode != null) {
+    private void writeTree(PipePlan conf, Resource target) throws RepositoryException {
+        copyProperties(conf, target);
+        Node targetNode = conf.hasChildren() ? target.adaptTo(Node.class) : null;
+        if (targetNode != null) {
             logger.info("dubbing {} at {}", conf.getPath(), target.getPath());
-            while (childrenConf.hasNext()) {
-                Node node = childrenConf.nextNode();
-                if (!IGNORED_NODES.contains(node.getName())) {
-                    copyNode(node, targetNode);
+            for (PipePlan child : conf.getChildren()) {
+                if (!IGNORED_NODES.contains(child.getName())) {
+                    copyNode(child, targetNode);
                 }
             }
         }
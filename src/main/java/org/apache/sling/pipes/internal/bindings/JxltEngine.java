@@ -26,12 +26,23 @@ import org.apache.commons.jexl3.MapContext;
 
 public class JxltEngine {
 
+    /**
+     * number of parsed expressions kept by the engine
+     */
+    static final int CACHE_SIZE = 512;
+
+    /**
+     * jexl engines are thread safe, and costly to create. Its cache keeps parsed expressions, and lets compiled ones
+     * keep the property accessors they resolved
+     */
+    static final JexlEngine JEXL = new JexlBuilder().cache(CACHE_SIZE).create();
+
     JexlEngine jexl;
     JexlContext jc;
     static final String KEY_TIME = "timeutil";
 
     public JxltEngine(Map<String, Object> context) {
-        jexl = new JexlBuilder().create();
+        jexl = JEXL;
         jc = new MapContext(context);
         jc.set(KEY_TIME, new TimeUtil());
     }
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes.internal.inputstream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits an UTF-8 encoded csv file into byte ranges aligned on record boundaries, scanning bytes with the same
+ * quoting rules as {@link CsvTokenizer}, so that line breaks within quoted fields are not taken for record ends.
+ * UTF-8 multi-byte sequences never contain ASCII bytes, so separator, quotes &amp; line breaks can be matched on bytes.
+ * File is scanned through a sliding memory mapped window, so that it can be bigger than 2GB.
+ */
+class CsvChunker {
+    private static final byte QUOTE = '"';
+
+    static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+
+    private final long limit;
+
+    private final byte separator;
+
+    private final int windowSize;
+
+    private MappedByteBuffer window;
+
+    private long windowStart;
+
+    private boolean blank;
+
+    /**
+     * range of records of the input
+     */
+    static class Chunk {
+        final long start;
+        final long end;
+        final long firstRecord;
+
+        Chunk(long start, long end, long firstRecord) {
+            this.start = start;
+            this.end = end;
+            this.firstRecord = firstRecord;
+        }
+
+        /**
+         * @param channel channel of the split file
+         * @return read only mapping of that range
+         * @throws IOException in case range can't be mapped, or is bigger than 2GB
+         */
+        ByteBuffer map(FileChannel channel) throws IOException {
+            return CsvChunker.map(channel, start, end);
+        }
+    }
+
+    /**
+     * @param channel channel of the file to split, only read with absolute accesses
+     * @param separator ASCII separator
+     * @throws IOException in case file size can't be read
+     */
+    CsvChunker(FileChannel channel, char separator) throws IOException {
+        this(channel, separator, WINDOW_SIZE);
+    }
+
+    /**
+     * @param channel channel of the file to split, only read with absolute accesses
+     * @param separator ASCII separator
+     * @param windowSize size of the window through which file is scanned
+     * @throws IOException in case file size can't be read
+     */
+    CsvChunker(FileChannel channel, char separator, int windowSize) throws IOException {
+        if (separator > 0x7F) {
+            throw new IllegalArgumentException("only ASCII separators can be used for chunking");
+        }
+        this.channel = channel;
+        this.limit = channel.size();
+        this.separator = (byte) separator;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @return read only mapping of the given range of the channel
+     * @throws IOException in case range can't be mapped, or is bigger than 2GB
+     */
+    static ByteBuffer map(FileChannel channel, long start, long end) throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IOException("csv records from offset " + start + " span more than 2GB");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    }
+
+    /**
+     * @param position offset in the file, records being scanned forward only
+     * @return byte at that offset, mapping next window if needed
+     * @throws IOException in case window can't be mapped
+     */
+    private byte get(long position) throws IOException {
+        if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, limit - position));
+        }
+        return window.get((int) (position - windowStart));
+    }
+
+    /**
+     * @param from offset of a record start
+     * @return offset following the end of that record, line break included
+     * @throws IOException in case file can't be read
+     */
+    long skipRecord(long from) throws IOException {
+        long i = from;
+        boolean quoted = false;
+        boolean fieldStart = true;
+        blank = true;
+        while (i < limit) {
+            byte c = get(i++);
+            if (quoted) {
+                if (c == QUOTE) {
+                    if (i < limit && get(i) == QUOTE) {
+                        i++;
+                        blank = false;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    blank &= isWhitespace(c);
+                }
+            } else if (c == QUOTE && fieldStart) {
+                quoted = true;
+                fieldStart = false;
+            } else if (c == separator) {
+                fieldStart = true;
+                blank = false;
+            } else if (c == '\n') {
+                return i;
+            } else if (c == '\r') {
+                if (i < limit && get(i) == '\n') {
+                    i++;
+                }
+                return i;
+            } else {
+                fieldStart = false;
+                blank &= isWhitespace(c);
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @return true if last skipped record is blank, the same way {@link CsvTokenizer#isBlank()} considers it
+     */
+    boolean isBlank() {
+        return blank;
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c >= 0 && Character.isWhitespace((char) c);
+    }
+
+    /**
+     * @param from offset of the first record to consider
+     * @param chunkSize size in bytes above which a chunk is ended at next record boundary
+     * @return chunks covering the input from given offset up to its first blank record, each one knowing its first
+     * record index
+     * @throws IOException in case file can't be read
+     */
+    List<Chunk> split(long from, int chunkSize) throws IOException {
+        List<Chunk> chunks = new ArrayList<>();
+        long chunkStart = from;
+        long chunkFirstRecord = 0;
+        long records = 0;
+        long position = from;
+        while (position < limit) {
+            long recordStart = position;
+            position = skipRecord(position);
+            if (blank) {
+                if (recordStart > chunkStart) {
+                    chunks.add(new Chunk(chunkStart, recordStart, chunkFirstRecord));
+                }
+                break;
+            }
+            records++;
+            if (position - chunkStart >= chunkSize || position >= limit) {
+                chunks.add(new Chunk(chunkStart, position, chunkFirstRecord));
+                chunkStart = position;
+                chunkFirstRecord = records;
+            }
+        }
+        return chunks;
+    }
+}
@@ -16,7 +16,7 @@
  */
 package org.apache.sling.pipes.internal.inputstream;
 
-import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.io.input.CharSequenceReader;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.pipes.AbstractInputStreamPipe;
 import org.apache.sling.pipes.PipeBindings;
@@ -24,15 +24,28 @@ import org.apache.sling.pipes.Plumber;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Csv input stream pipe, similar at what
@@ -45,57 +58,312 @@ public class CsvPipe extends AbstractInputStreamPipe {
 
     protected static final String DEFAULT_SEPARATOR = ",";
 
-    BufferedReader reader;
+    /**
+     * if true, input is spooled, split in ranges of records, and each range is parsed on its own thread. Output order
+     * is then not the input's one, while index binding stays the record's position in the input. As in sequential
+     * mode, input ends at its first blank line
+     */
+    public static final String PN_PARALLEL = "parallel";
 
-    String nextLine = null;
+    public static final String PN_NUM_THREADS = "numThreads";
 
-    int index = 0;
+    /**
+     * maximum number of parsed records waiting to be output
+     */
+    public static final String PN_QUEUE_SIZE = "queueSize";
+
+    public static final int QUEUE_SIZE_DEFAULT = 1000;
+
+    /**
+     * spool threshold used in parallel mode when none is configured: smaller inputs are parsed sequentially
+     */
+    static final long PARALLEL_SPOOL_THRESHOLD = 1024 * 1024L;
+
+    static final int MIN_CHUNK_SIZE = 64 * 1024;
+
+    static final int MAX_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static final Object[] END_OF_CHUNK = new Object[0];
+
+    Reader reader;
+
+    long index = 0;
+
+    ExecutorService executorService;
+
+    FileChannel channel;
 
     public CsvPipe(Plumber plumber, Resource resource, PipeBindings upperBindings) {
         super(plumber, resource, upperBindings);
     }
 
+    /**
+     * flyweight view of the current csv record, as a map header -&gt; value. Values are only materialized when read,
+     * and the view is updated each time a new record is read: it must be copied to be kept beyond current iteration.
+     */
+    static class CsvRow extends AbstractMap<String, String> {
+        final Map<String, Integer> columns = new LinkedHashMap<>();
+        final CsvTokenizer tokenizer;
+
+        CsvRow(String[] headers, CsvTokenizer tokenizer) {
+            this.tokenizer = tokenizer;
+            for (int i = 0; i < headers.length; i++) {
+                columns.put(headers[i], i);
+            }
+        }
+
+        @Override
+        public String get(Object key) {
+            Integer column = columns.get(key);
+            return column != null ? tokenizer.getField(column) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return columns.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return columns.size();
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    Iterator<Entry<String, Integer>> it = columns.entrySet().iterator();
+                    return new Iterator<Entry<String, String>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            Entry<String, Integer> column = it.next();
+                            return new SimpleImmutableEntry<>(column.getKey(), tokenizer.getField(column.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return columns.size();
+                }
+            };
+        }
+    }
+
+    @Override
+    protected Object copyBinding(Object binding) {
+        return binding instanceof CsvRow ? new HashMap<>((CsvRow) binding) : binding;
+    }
+
+    @Override
+    protected long getSpoolThreshold() {
+        long threshold = super.getSpoolThreshold();
+        return threshold < 0 && properties.get(PN_PARALLEL, false) ? PARALLEL_SPOOL_THRESHOLD : threshold;
+    }
+
     @Override
     public Iterator<Resource> getOutput(InputStream inputStream) {
-        Iterator<Resource> output = EMPTY_ITERATOR;
-        String separator = properties.get(PN_SEPARATOR, DEFAULT_SEPARATOR);
-        reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        char separator = CsvTokenizer.toSeparator(properties.get(PN_SEPARATOR, DEFAULT_SEPARATOR));
+        index = 0;
+        if (properties.get(PN_PARALLEL, false)) {
+            Path spooled = getSpoolFile();
+            if (spooled == null) {
+                logger.debug("input of {} is below spool threshold, and is parsed sequentially", getName());
+            } else if (separator > 0x7F) {
+                logger.warn("{} separator is not ASCII, input of {} is parsed sequentially", separator, getName());
+            } else {
+                return getParallelOutput(spooled, separator);
+            }
+        }
+        reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+        final CsvTokenizer tokenizer = new CsvTokenizer(reader, separator);
         try {
-            String headersLine = reader.readLine();
-            final String[] headers = headersLine.split(separator);
-            if (headers.length > 0){
-                nextLine = reader.readLine();
-                final Resource inputResource = getInput();
-                output = new Iterator<Resource>() {
-                    @Override
-                    public boolean hasNext() {
-                        return StringUtils.isNotBlank(nextLine);
-                    }
-                    @Override
-                    public Resource next() {
-                        try {
-                            String[] values = nextLine.split(separator);
-                            if (values.length < headers.length){
-                                throw new IllegalArgumentException("wrong format line " + index + " should have at least the same number of columns than the headers");
-                            }
-                            Map<String, String> map = new HashMap<>();
-                            for (int i = 0; i < headers.length; i ++){
-                                map.put(headers[i], values[i]);
-                            }
-                            binding = map;
-                            nextLine = reader.readLine();
-                        } catch (IOException e) {
-                            logger.error("Unable to retrieve {}nth line of csv file", index, e);
-                            nextLine = null;
-                            throw new NoSuchElementException();
-                        }
-                        return inputResource;
+            if (!tokenizer.readRecord()) {
+                return EMPTY_ITERATOR;
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+        final int nbColumns = tokenizer.getFieldCount();
+        final CsvRow row = new CsvRow(tokenizer.getFields(), tokenizer);
+        final Resource inputResource = getInput();
+        return new Iterator<Resource>() {
+            boolean pending = false;
+            boolean exhausted = false;
+
+            @Override
+            public boolean hasNext() {
+                if (!pending && !exhausted) {
+                    try {
+                        pending = tokenizer.readRecord() && !tokenizer.isBlank();
+                    } catch (IOException e) {
+                        logger.error("Unable to retrieve {}nth line of csv file", index, e);
+                        pending = false;
                     }
-                };
+                    exhausted = !pending;
+                }
+                return pending;
+            }
+
+            @Override
+            public Resource next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                pending = false;
+                index++;
+                if (tokenizer.getFieldCount() < nbColumns){
+                    throw new IllegalArgumentException("wrong format line " + index + " should have at least the same number of columns than the headers");
+                }
+                binding = row;
+                getBindings().addBinding(getName() + INDEX_SUFFIX, index - 1);
+                return inputResource;
             }
+        };
+    }
+
+    /**
+     * @param spooled file input has been spooled to
+     * @param separator ASCII separator
+     * @return output of records parsed in parallel
+     */
+    Iterator<Resource> getParallelOutput(Path spooled, char separator) {
+        try {
+            shutdown();
+            channel = FileChannel.open(spooled, StandardOpenOption.READ);
+            CsvChunker chunker = new CsvChunker(channel, separator);
+            long headerEnd = chunker.skipRecord(0);
+            if (headerEnd == 0) {
+                return EMPTY_ITERATOR;
+            }
+            CsvTokenizer tokenizer = new CsvTokenizer(decode(CsvChunker.map(channel, 0, headerEnd)), separator);
+            tokenizer.readRecord();
+            String[] headers = tokenizer.getFields();
+            int numThreads = properties.get(PN_NUM_THREADS, Runtime.getRuntime().availableProcessors());
+            long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, (channel.size() - headerEnd) / (numThreads * 4)));
+            List<CsvChunker.Chunk> chunks = chunker.split(headerEnd, (int) chunkSize);
+            logger.debug("parsing {} chunks of {} with {} threads", chunks.size(), getName(), numThreads);
+            return new ParallelCsvIterator(channel, separator, headers, chunks, numThreads);
         } catch (IOException e) {
             throw new IllegalArgumentException(e);
         }
-        return output;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return reader of the given input
+     */
+    static Reader decode(ByteBuffer input) {
+        return new CharSequenceReader(StandardCharsets.UTF_8.decode(input));
+    }
+
+    /**
+     * Iterator over records parsed by worker threads, each one parsing a chunk of the input, and pushing the records
+     * with their index in a bounded queue
+     */
+    class ParallelCsvIterator implements Iterator<Resource> {
+        final BlockingQueue<Object[]> queue = new ArrayBlockingQueue<>(properties.get(PN_QUEUE_SIZE, QUEUE_SIZE_DEFAULT));
+        final Resource inputResource = getInput();
+        final int nbColumns;
+        volatile String failure;
+        int remainingChunks;
+        Object[] nextRecord;
+
+        ParallelCsvIterator(FileChannel input, char separator, String[] headers, List<CsvChunker.Chunk> chunks, int numThreads) {
+            nbColumns = headers.length;
+            remainingChunks = chunks.size();
+            executorService = Executors.newFixedThreadPool(numThreads);
+            for (CsvChunker.Chunk chunk : chunks) {
+                executorService.execute(() -> parse(input, separator, headers, chunk));
+            }
+            executorService.shutdown();
+        }
+
+        /**
+         * parses a chunk, pushing each record as a map header -&gt; value, along with its index
+         */
+        void parse(FileChannel input, char separator, String[] headers, CsvChunker.Chunk chunk) {
+            try {
+                CsvTokenizer tokenizer = new CsvTokenizer(decode(chunk.map(input)), separator);
+                for (long recordIndex = chunk.firstRecord; failure == null && tokenizer.readRecord(); recordIndex++) {
+                    if (tokenizer.getFieldCount() < nbColumns) {
+                        failure = "wrong format line " + (recordIndex + 1) + " should have at least the same number of columns than the headers";
+                        break;
+                    }
+                    Map<String, String> record = new LinkedHashMap<>();
+                    for (int i = 0; i < nbColumns; i++) {
+                        record.put(headers[i], tokenizer.getField(i));
+                    }
+                    queue.put(new Object[]{record, recordIndex});
+                }
+                queue.put(END_OF_CHUNK);
+            } catch (IOException e) {
+                failure = e.getMessage();
+                queue.offer(END_OF_CHUNK);
+            } catch (InterruptedException e) {
+                logger.debug("interrupted while parsing {}", getName());
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (nextRecord == null && remainingChunks > 0) {
+                    Object[] item = queue.take();
+                    if (failure != null) {
+                        shutdown();
+                        throw new IllegalArgumentException(failure);
+                    }
+                    if (item == END_OF_CHUNK) {
+                        remainingChunks--;
+                    } else {
+                        nextRecord = item;
+                    }
+                }
+            } catch (InterruptedException e) {
+                logger.error("interrupted while waiting for records", e);
+                Thread.currentThread().interrupt();
+                remainingChunks = 0;
+            }
+            return nextRecord != null;
+        }
+
+        @Override
+        public Resource next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            binding = nextRecord[0];
+            getBindings().addBinding(getName() + INDEX_SUFFIX, nextRecord[1]);
+            nextRecord = null;
+            return inputResource;
+        }
+    }
+
+    void shutdown() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+            executorService = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("unable to close spooled input of {}", getName(), e);
+            }
+            channel = null;
+        }
+    }
+
+    @Override
+    public void after() {
+        super.after();
+        shutdown();
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes.internal.inputstream;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Streaming RFC 4180 tokenizer: reads csv records one at a time out of a reader, handling quoted fields, escaped
+ * quotes and line breaks within quoted fields. Characters of the current record are kept in reusable buffers, fields
+ * are only materialized as strings when requested, and are valid until next record is read.
+ */
+class CsvTokenizer {
+    static final int BUFFER_SIZE = 8192;
+
+    private static final char QUOTE = '"';
+
+    private static final char ESCAPE = '\\';
+
+    /**
+     * regular expression metacharacters, that a separator configured as a regular expression had to escape
+     */
+    private static final String REGEXP_METACHARACTERS = "\\.|^$*+?()[]{}";
+
+    private static final int EOF = -1;
+
+    private final Reader reader;
+
+    private final char separator;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    private int position = 0;
+
+    private int limit = 0;
+
+    private char[] chars = new char[256];
+
+    private int length = 0;
+
+    private int[] ends = new int[16];
+
+    private int fieldCount = 0;
+
+    /**
+     * @param reader reader from which records are read, buffering is done by the tokenizer
+     * @param separator single character separator
+     */
+    CsvTokenizer(Reader reader, char separator) {
+        this.reader = reader;
+        this.separator = separator;
+    }
+
+    /**
+     * @param separator configured separator, either one character, or one escaped character (as separator used to be a
+     * regular expression): \t, \n, \r, or an escaped regular expression metacharacter like \| or \\
+     * @return separator character
+     */
+    static char toSeparator(String separator) {
+        if (separator != null) {
+            if (separator.length() == 1) {
+                return separator.charAt(0);
+            }
+            if (separator.length() == 2 && separator.charAt(0) == ESCAPE) {
+                char escaped = separator.charAt(1);
+                switch (escaped) {
+                    case 't':
+                        return '\t';
+                    case 'n':
+                        return '\n';
+                    case 'r':
+                        return '\r';
+                    default:
+                        if (REGEXP_METACHARACTERS.indexOf(escaped) >= 0) {
+                            return escaped;
+                        }
+                }
+            }
+        }
+        throw new IllegalArgumentException("csv separator should be one character, " + separator + " is not supported");
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, BUFFER_SIZE);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return EOF;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void append(int c) {
+        if (length == chars.length) {
+            chars = Arrays.copyOf(chars, length * 2);
+        }
+        chars[length++] = (char) c;
+    }
+
+    private void endField() {
+        if (fieldCount == ends.length) {
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+        }
+        ends[fieldCount++] = length;
+    }
+
+    /**
+     * reads next record, overriding current one
+     * @return false if there is no record left
+     * @throws IOException in case reader fails
+     */
+    boolean readRecord() throws IOException {
+        length = 0;
+        fieldCount = 0;
+        int c = read();
+        if (c == EOF) {
+            return false;
+        }
+        boolean quoted = false;
+        boolean fieldStart = true;
+        while (c != EOF) {
+            if (quoted) {
+                if (c == QUOTE) {
+                    c = read();
+                    if (c != QUOTE) {
+                        //closing quote, current character is processed as an unquoted one
+                        quoted = false;
+                        continue;
+                    }
+                }
+                append(c);
+            } else if (c == QUOTE && fieldStart) {
+                quoted = true;
+                fieldStart = false;
+            } else if (c == separator) {
+                endField();
+                fieldStart = true;
+            } else if (c == '\n') {
+                break;
+            } else if (c == '\r') {
+                if (read() != '\n' && limit > 0) {
+                    position--;
+                }
+                break;
+            } else {
+                append(c);
+                fieldStart = false;
+            }
+            c = read();
+        }
+        endField();
+        return true;
+    }
+
+    /**
+     * @return number of fields of the current record
+     */
+    int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @param i index of the field
+     * @return value of i-th field of current record
+     */
+    String getField(int i) {
+        int start = i > 0 ? ends[i - 1] : 0;
+        return new String(chars, start, ends[i] - start);
+    }
+
+    /**
+     * @return all fields of current record
+     */
+    String[] getFields() {
+        String[] fields = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            fields[i] = getField(i);
+        }
+        return fields;
+    }
+
+    /**
+     * @return true if current record is a line containing only blanks
+     */
+    boolean isBlank() {
+        if (fieldCount > 1) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (!Character.isWhitespace(chars[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes.internal.inputstream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.pipes.AbstractInputStreamPipe;
+import org.apache.sling.pipes.PipeBindings;
+import org.apache.sling.pipes.Plumber;
+import org.apache.sling.pipes.internal.JsonUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.json.JsonException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * JSON Lines (newline delimited json) input stream pipe: each non blank line is parsed, lazily, as a json record,
+ * that is the output binding, the index of its line being bound as <code>name_index</code>
+ */
+public class JsonLinesPipe extends AbstractInputStreamPipe {
+    private static Logger logger = LoggerFactory.getLogger(JsonLinesPipe.class);
+    public static final String RESOURCE_TYPE = RT_PREFIX + "jsonl";
+
+    /**
+     * property specifying wether malformed lines should be skipped, and reported as errors of the execution, rather
+     * than failing it
+     */
+    protected static final String PN_SKIP_MALFORMED = "skipMalformed";
+
+    BufferedReader reader;
+
+    public JsonLinesPipe(Plumber plumber, Resource resource, PipeBindings upperBindings) {
+        super(plumber, resource, upperBindings);
+    }
+
+    /**
+     * records an error for a malformed line, keeping previous one if not yet collected
+     * @param lineIndex index of the malformed line
+     */
+    void reportMalformedLine(int lineIndex) {
+        String error = getResource().getPath() + " (line " + lineIndex + ")";
+        String previous = bindings.popCurrentError();
+        bindings.setCurrentError(previous != null ? previous + ", " + error : error);
+    }
+
+    @Override
+    public Iterator<Resource> getOutput(InputStream inputStream) {
+        final boolean skipMalformed = properties.get(PN_SKIP_MALFORMED, false);
+        final Resource inputResource = getInput();
+        reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        return new Iterator<Resource>() {
+            Object nextRecord;
+            int lineIndex = -1;
+            boolean exhausted = false;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    while (nextRecord == null && !exhausted) {
+                        String line = reader.readLine();
+                        if (line == null) {
+                            exhausted = true;
+                        } else {
+                            lineIndex++;
+                            if (StringUtils.isNotBlank(line)) {
+                                nextRecord = parse(line);
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    logger.error("Unable to retrieve line {} of json lines input", lineIndex, e);
+                    exhausted = true;
+                }
+                return nextRecord != null;
+            }
+
+            Object parse(String line) {
+                try {
+                    return JsonUtil.unbox(JsonUtil.parse(line));
+                } catch (JsonException e) {
+                    if (!skipMalformed) {
+                        throw new IllegalArgumentException("malformed json at line " + lineIndex, e);
+                    }
+                    logger.warn("skipping malformed json at line {}", lineIndex);
+                    reportMalformedLine(lineIndex);
+                }
+                return null;
+            }
+
+            @Override
+            public Resource next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                binding = nextRecord;
+                nextRecord = null;
+                getBindings().addBinding(getName() + INDEX_SUFFIX, lineIndex);
+                return inputResource;
+            }
+        };
+    }
+}
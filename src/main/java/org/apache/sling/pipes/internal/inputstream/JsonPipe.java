@@ -27,17 +27,26 @@ import org.apache.sling.pipes.internal.JsonUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.json.Json;
 import javax.json.JsonArray;
+import javax.json.JsonException;
 import javax.json.JsonObject;
 import javax.json.JsonStructure;
 import javax.json.JsonValue.ValueType;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -61,18 +70,24 @@ public class JsonPipe extends AbstractInputStreamPipe {
      */
     protected static final String PN_RAW = "raw";
 
+    /**
+     * property specifying wether json should be read with a pull parser, down to the value path, outputting one element
+     * at a time, without ever loading the whole document. Input must then be strict json (no single quotes)
+     */
+    protected static final String PN_STREAMING = "streaming";
+
     protected static final String JSONPATH_ROOT = "$";
 
     protected static final String ARRAY_START = "[";
 
     protected static final String OBJ_START = ".";
 
-    protected static final String INDEX_SUFFIX = "_index";
-
     protected static final Pattern JSONPATH_FIRSTTOKEN = Pattern.compile("^\\" + JSONPATH_ROOT + "([\\" + OBJ_START + "\\" + ARRAY_START + "])([^\\" + OBJ_START + "\\]\\" + ARRAY_START + "]+)\\]?");
 
     JsonBindingIterator internalIterator;
 
+    JsonParser parser;
+
     public JsonPipe(Plumber plumber, Resource resource, PipeBindings upperBindings) {
         super(plumber, resource, upperBindings);
     }
@@ -95,6 +110,9 @@ public class JsonPipe extends AbstractInputStreamPipe {
      */
     @Override
     public Iterator<Resource> getOutput(InputStream is) {
+        if (properties.get(PN_STREAMING, false)) {
+            return getStreamingOutput(is);
+        }
         Iterator<Resource> output = EMPTY_ITERATOR;
         Iterator<Resource> inputSingletonIterator = Collections.singleton(getInput()).iterator();
         try {
@@ -157,6 +175,176 @@ public class JsonPipe extends AbstractInputStreamPipe {
         }
     }
 
+    /**
+     * streamed version of the output: parser is moved down to the configured value path, and if value there is an
+     * array or an object, each element or entry is read and unboxed only when iterated
+     * @param is input stream
+     * @return input resource, repeated for each element
+     */
+    Iterator<Resource> getStreamingOutput(InputStream is) {
+        parser = Json.createParser(new InputStreamReader(is, StandardCharsets.UTF_8));
+        if (!parser.hasNext()) {
+            return EMPTY_ITERATOR;
+        }
+        Event event = parser.next();
+        String valuePath = properties.get(PN_VALUEPATH, String.class);
+        if (StringUtils.isNotBlank(valuePath)) {
+            event = moveTo(event, bindings.instantiateExpression(valuePath));
+            if (event == null) {
+                logger.debug("{} has not been found in the json stream", valuePath);
+                return EMPTY_ITERATOR;
+            }
+        }
+        if (isRaw() || !(event == Event.START_ARRAY || event == Event.START_OBJECT)) {
+            binding = readValue(event);
+            return Collections.singleton(getInput()).iterator();
+        }
+        return new JsonStreamingIterator(event == Event.START_OBJECT, getInput());
+    }
+
+    /**
+     * moves the parser down to the given value path
+     * @param event current event of the parser, that is start of the structure the path is relative to
+     * @param valuePath path to follow
+     * @return event starting the value at the end of the path, null if the path does not exist
+     */
+    Event moveTo(Event event, String valuePath) {
+        String remainingPath = valuePath;
+        Matcher matcher = JSONPATH_FIRSTTOKEN.matcher(remainingPath);
+        while (event != null && matcher.find()) {
+            String content = matcher.group(2);
+            if (ARRAY_START.equals(matcher.group(1)) && event == Event.START_ARRAY) {
+                int index = Integer.parseInt(content);
+                event = parser.next();
+                for (int i = 0; i < index && event != Event.END_ARRAY; i++) {
+                    skipValue(event);
+                    event = parser.next();
+                }
+                event = event == Event.END_ARRAY ? null : event;
+            } else if (OBJ_START.equals(matcher.group(1)) && event == Event.START_OBJECT) {
+                event = parser.next();
+                while (event == Event.KEY_NAME && !content.equals(parser.getString())) {
+                    skipValue(parser.next());
+                    event = parser.next();
+                }
+                event = event == Event.KEY_NAME ? parser.next() : null;
+            } else {
+                event = null;
+            }
+            remainingPath = JSONPATH_ROOT + remainingPath.substring(matcher.end());
+            matcher = JSONPATH_FIRSTTOKEN.matcher(remainingPath);
+        }
+        return event;
+    }
+
+    /**
+     * skips the value started by given event
+     * @param event start event of the value
+     */
+    void skipValue(Event event) {
+        if (event == Event.START_ARRAY || event == Event.START_OBJECT) {
+            int depth = 1;
+            while (depth > 0) {
+                Event next = parser.next();
+                if (next == Event.START_ARRAY || next == Event.START_OBJECT) {
+                    depth++;
+                } else if (next == Event.END_ARRAY || next == Event.END_OBJECT) {
+                    depth--;
+                }
+            }
+        }
+    }
+
+    /**
+     * reads the value started by given event, unboxed the same way {@link JsonUtil#unbox(javax.json.JsonValue)} does
+     * @param event start event of the value
+     * @return unboxed value
+     */
+    Object readValue(Event event) {
+        switch (event) {
+            case START_ARRAY:
+                List<Object> list = new ArrayList<>();
+                for (Event next = parser.next(); next != Event.END_ARRAY; next = parser.next()) {
+                    list.add(readValue(next));
+                }
+                return list;
+            case START_OBJECT:
+                Map<String, Object> map = new HashMap<>();
+                for (Event next = parser.next(); next != Event.END_OBJECT; next = parser.next()) {
+                    String key = parser.getString();
+                    Object value = readValue(parser.next());
+                    if (value != null) {
+                        map.put(key, value);
+                    }
+                }
+                return map;
+            case VALUE_STRING:
+                return parser.getString();
+            case VALUE_NUMBER:
+                return parser.isIntegralNumber() ? parser.getLong() : parser.getBigDecimal().doubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                throw new JsonException("Unexpected json event " + event);
+        }
+    }
+
+    /**
+     * iterates over elements of a json array, or entries of a json object, reading them from the parser one at a time
+     */
+    class JsonStreamingIterator implements Iterator<Resource> {
+        final boolean object;
+        final Resource inputResource;
+        Event nextEvent;
+        int index = 0;
+
+        JsonStreamingIterator(boolean object, Resource inputResource) {
+            this.object = object;
+            this.inputResource = inputResource;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextEvent == null && parser != null) {
+                nextEvent = parser.next();
+                if (nextEvent == Event.END_ARRAY || nextEvent == Event.END_OBJECT) {
+                    parser.close();
+                    parser = null;
+                }
+            }
+            return parser != null;
+        }
+
+        @Override
+        public Resource next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (object) {
+                String key = parser.getString();
+                binding = new DefaultKeyValue<String, Object>(key, readValue(parser.next()));
+            } else {
+                binding = readValue(nextEvent);
+            }
+            nextEvent = null;
+            getBindings().addBinding(getName() + INDEX_SUFFIX, index ++);
+            return inputResource;
+        }
+    }
+
+    @Override
+    public void after() {
+        if (parser != null) {
+            parser.close();
+            parser = null;
+        }
+        super.after();
+    }
+
     /**
      * Returns fetched json value from value path
      * @param json json structure from which to start
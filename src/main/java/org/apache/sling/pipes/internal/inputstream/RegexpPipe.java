@@ -24,8 +24,12 @@ import org.apache.sling.pipes.Plumber;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -44,27 +48,84 @@ public class RegexpPipe extends AbstractInputStreamPipe {
 
     public static final String RESOURCE_TYPE = "slingPipes/egrep";
     public static final String PN_PATTERN = "pattern";
+
+    /**
+     * if true, input is matched as it is read, over a sliding window, or line by line, instead of being loaded at once
+     */
+    public static final String PN_STREAMING = "streaming";
+
+    /**
+     * in streaming mode, maximum length of a match, longer matches being possibly truncated or missed
+     */
+    public static final String PN_MAX_MATCH_LENGTH = "maxMatchLength";
+
+    /**
+     * in streaming mode, matches pattern against each line, defaults to true if pattern is anchored with ^ or $
+     */
+    public static final String PN_LINE_MODE = "lineMode";
+
+    public static final int MAX_MATCH_LENGTH_DEFAULT = 4096;
+    private static final int MIN_WINDOW_SIZE = 8192;
     private static final Pattern PATTERN_NAME = Pattern.compile("\\?<([\\w]+)>");
     private static final short PATTERN_IDX_NAME = 1;
 
+    String patternString;
+    Pattern pattern;
+    Collection<String> names;
+
     public RegexpPipe(Plumber plumber, Resource resource, PipeBindings upperBindings) {
         super(plumber, resource, upperBindings);
     }
 
+    /**
+     * compiles pattern and extracts its group names, only if pattern has changed since last input
+     * @param newPatternString instantiated pattern
+     */
+    void compile(String newPatternString) {
+        if (!newPatternString.equals(patternString)) {
+            patternString = newPatternString;
+            pattern = Pattern.compile(patternString);
+            names = getGroupNames(patternString);
+            if (names.isEmpty()){
+                logger.debug("no name defined, will take the whole match");
+            }
+        }
+    }
+
+    /**
+     * @param matcher matcher positioned on a match
+     * @return binding corresponding to that match
+     */
+    Object getMatchBinding(Matcher matcher) {
+        if (!names.isEmpty()){
+            Map<String, Object> map = new HashMap<>();
+            for (String name : names) {
+                map.put(name, matcher.group(name));
+            }
+            return map;
+        }
+        //no group names defined, we take the whole match
+        return matcher.group(0);
+    }
+
     @Override
     public Iterator<Resource> getOutput(InputStream inputStream) {
         Iterator<Resource> output = EMPTY_ITERATOR;
         try {
-            String patternString = bindings.instantiateExpression(properties.get(PN_PATTERN, String.class));
-            if (patternString == null){
+            String instantiatedPattern = bindings.instantiateExpression(properties.get(PN_PATTERN, String.class));
+            if (instantiatedPattern == null){
                 logger.debug("pattern {} evaluates as empty.", properties.get(PN_PATTERN, String.class));
                 return output;
             }
-            final Collection<String> names = getGroupNames(patternString);
-            if (names.isEmpty()){
-                logger.debug("no name defined, will take the whole match");
+            compile(instantiatedPattern);
+            if (properties.get(PN_STREAMING, false)) {
+                Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+                boolean anchored = patternString.startsWith("^") || patternString.endsWith("$");
+                if (properties.get(PN_LINE_MODE, anchored)) {
+                    return new LineMatchIterator(new BufferedReader(reader), getInput());
+                }
+                return new WindowMatchIterator(reader, properties.get(PN_MAX_MATCH_LENGTH, MAX_MATCH_LENGTH_DEFAULT), getInput());
             }
-            Pattern pattern = Pattern.compile(patternString);
             String text = IOUtils.toString(inputStream, StandardCharsets.UTF_8);
             logger.trace("about to parse {}", text);
             Matcher matcher = pattern.matcher(text);
@@ -82,16 +143,7 @@ public class RegexpPipe extends AbstractInputStreamPipe {
                         if (! hasNext) {
                             throw new NoSuchElementException();
                         }
-                        if (!names.isEmpty()){
-                            Map<String, Object> map = new HashMap<>();
-                            for (String name : names) {
-                                map.put(name, matcher.group(name));
-                            }
-                            binding = map;
-                        } else {
-                            //no group names defined, we take the whole match
-                            binding = matcher.group(0);
-                        }
+                        binding = getMatchBinding(matcher);
                         hasNext = matcher.find();
                         return next;
                     }
@@ -103,6 +155,137 @@ public class RegexpPipe extends AbstractInputStreamPipe {
         return output;
     }
 
+    /**
+     * iterator outputting matches as they are found in the input
+     */
+    abstract class StreamingMatchIterator implements Iterator<Resource> {
+        final Resource inputResource;
+        Matcher matcher;
+        boolean found = false;
+        boolean exhausted = false;
+
+        StreamingMatchIterator(Resource inputResource) {
+            this.inputResource = inputResource;
+        }
+
+        /**
+         * positions matcher on next match
+         * @return false if there is no more match in the input
+         * @throws IOException in case input can't be read
+         */
+        abstract boolean findNext() throws IOException;
+
+        @Override
+        public boolean hasNext() {
+            if (!found && !exhausted) {
+                try {
+                    found = findNext();
+                } catch (IOException e) {
+                    logger.error("unable to read input", e);
+                    found = false;
+                }
+                exhausted = !found;
+            }
+            return found;
+        }
+
+        @Override
+        public Resource next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            binding = getMatchBinding(matcher);
+            found = false;
+            return inputResource;
+        }
+    }
+
+    /**
+     * matches the pattern against each line of the input
+     */
+    class LineMatchIterator extends StreamingMatchIterator {
+        final BufferedReader reader;
+
+        LineMatchIterator(BufferedReader reader, Resource inputResource) {
+            super(inputResource);
+            this.reader = reader;
+        }
+
+        @Override
+        boolean findNext() throws IOException {
+            while (matcher == null || !matcher.find()) {
+                String line = reader.readLine();
+                if (line == null) {
+                    return false;
+                }
+                matcher = matcher == null ? pattern.matcher(line) : matcher.reset(line);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * matches the pattern against a sliding window of the input, that keeps at most <code>maxMatchLength</code>
+     * characters of unmatched input when it slides
+     */
+    class WindowMatchIterator extends StreamingMatchIterator {
+        final Reader reader;
+        final int maxMatchLength;
+        final char[] window;
+        int length = 0;
+        int from = 0;
+        boolean endOfInput = false;
+
+        WindowMatchIterator(Reader reader, int maxMatchLength, Resource inputResource) {
+            super(inputResource);
+            this.reader = reader;
+            this.maxMatchLength = maxMatchLength;
+            window = new char[Math.max(2 * maxMatchLength, MIN_WINDOW_SIZE)];
+            matcher = pattern.matcher(CharBuffer.wrap(window, 0, 0));
+        }
+
+        /**
+         * drops matched input, and input that can't be start of a match anymore, then fills the window
+         * @throws IOException in case input can't be read
+         */
+        void slide() throws IOException {
+            int keep = Math.min(from, length);
+            if (length - keep > maxMatchLength) {
+                keep = length - maxMatchLength;
+            }
+            System.arraycopy(window, keep, window, 0, length - keep);
+            length -= keep;
+            from = Math.max(0, from - keep);
+            while (!endOfInput && length < window.length) {
+                int read = reader.read(window, length, window.length - length);
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    length += read;
+                }
+            }
+        }
+
+        @Override
+        boolean findNext() throws IOException {
+            while (true) {
+                if (from <= length) {
+                    matcher.reset(CharBuffer.wrap(window, 0, length));
+                    matcher.useTransparentBounds(true).useAnchoringBounds(false).region(from, length);
+                    //a match is final if more input could only make it longer than the maximum length
+                    if (matcher.find() && (endOfInput || !matcher.hitEnd() || matcher.start() + maxMatchLength <= length)) {
+                        from = matcher.end() == matcher.start() ? matcher.end() + 1 : matcher.end();
+                        return true;
+                    }
+                }
+                if (endOfInput) {
+                    return false;
+                }
+                slide();
+            }
+        }
+    }
+
     /**
      * @param pattern configured pattern
      * @return list of group names identified in a given pattern
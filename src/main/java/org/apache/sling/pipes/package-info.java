@@ -14,7 +14,18 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-@Version("4.5.0")
+
+/**
+ * Sling Pipes API.
+ * <p>
+ * 4.6.0: {@link org.apache.sling.pipes.PipeBuilder#run()} and its variants now execute an in-memory configuration,
+ * and no longer write it under <code>/var/pipes</code>, unless {@link org.apache.sling.pipes.PipeBuilder#persistent()}
+ * is called first (or {@link org.apache.sling.pipes.PipeBuilder#build()} is used). Also adds
+ * {@link org.apache.sling.pipes.PipeBuilder#jsonl(String)}, a streaming
+ * {@link org.apache.sling.pipes.PipeBuilder#run(java.util.Map, java.io.Writer)} and purge statistics in
+ * {@link org.apache.sling.pipes.PlumberMXBean}.
+ */
+@Version("4.6.0")
 package org.apache.sling.pipes;
 
 import org.osgi.annotation.versioning.Version;
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes;
+
+import org.apache.commons.collections4.IteratorUtils;
+import org.apache.sling.api.resource.Resource;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * testing input stream handling common to input stream pipes
+ */
+public class AbstractInputStreamPipeTest extends AbstractPipeTest {
+    static final String CSV_PATH = "/content/test/standardTest.csv";
+
+    AbstractInputStreamPipe getCsvPipe(long spoolThreshold) throws Exception {
+        context.load().binaryFile("/standardTest.csv", CSV_PATH);
+        Pipe container = plumber.newPipe(context.resourceResolver())
+                .csv(CSV_PATH).with(AbstractInputStreamPipe.PN_SPOOL_THRESHOLD, spoolThreshold).build();
+        return (AbstractInputStreamPipe) plumber.getPipe(container.getResource().getChild(Pipe.NN_CONF).listChildren().next());
+    }
+
+    @Test
+    public void testSpool() throws Exception {
+        AbstractInputStreamPipe pipe = getCsvPipe(10);
+        List<Resource> output = IteratorUtils.toList(pipe.getOutput());
+        assertEquals("spooled input should be parsed the same", 3, output.size());
+        Path spoolFile = pipe.spoolFile;
+        assertNotNull("input should have been spooled", spoolFile);
+        assertTrue("spool file should exist", Files.exists(spoolFile));
+        assertNotNull("spooled input should be mapped", pipe.getMappedInput());
+        pipe.after();
+        assertFalse("spool file should be removed after execution", Files.exists(spoolFile));
+        assertNull("mapped input should be released", pipe.getMappedInput());
+    }
+
+    @Test
+    public void testBelowThreshold() throws Exception {
+        AbstractInputStreamPipe pipe = getCsvPipe(100000);
+        assertEquals("input should be parsed", 3, IteratorUtils.toList(pipe.getOutput()).size());
+        assertNull("small input should not be spooled", pipe.spoolFile);
+        pipe.after();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HttpInputCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    String store(HttpInputCache cache, String key, String etag, String body) throws IOException {
+        URLConnection connection = mock(URLConnection.class);
+        when(connection.getHeaderField(HttpInputCache.HEADER_ETAG)).thenReturn(etag);
+        try (InputStream stored = cache.store(key, connection, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)))) {
+            return IOUtils.toString(stored, StandardCharsets.UTF_8);
+        }
+    }
+
+    String read(HttpInputCache.Entry entry) throws IOException {
+        try (InputStream body = entry.open()) {
+            return IOUtils.toString(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testStoreAndReplace() throws IOException {
+        Path directory = folder.getRoot().toPath().resolve("cache");
+        HttpInputCache cache = new HttpInputCache(directory, 1024);
+        assertNull(cache.get("http://foo"));
+        assertEquals("first", store(cache, "http://foo", "\"v1\"", "first"));
+        HttpInputCache.Entry entry = cache.get("http://foo");
+        assertEquals("\"v1\"", entry.etag);
+        assertEquals("first", read(entry));
+        store(cache, "http://foo", "\"v2\"", "second");
+        entry = cache.get("http://foo");
+        assertEquals("validators should match their body", "\"v2\"", entry.etag);
+        assertEquals("second", read(entry));
+        assertEquals("previous body should be removed", 1, Files.list(directory).filter(p -> p.toString().endsWith(".body")).count());
+    }
+
+    @Test
+    public void testOwnerOnly() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Path directory = folder.getRoot().toPath().resolve("cache");
+        HttpInputCache cache = new HttpInputCache(directory, 1024);
+        store(cache, "http://foo", "\"v1\"", "first");
+        assertEquals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE),
+                Files.getPosixFilePermissions(directory));
+        Files.list(directory).forEach(file -> {
+            try {
+                assertEquals(file + " should be owner only", EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+                        Files.getPosixFilePermissions(file));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        Path directory = folder.getRoot().toPath().resolve("cache");
+        HttpInputCache cache = new HttpInputCache(directory, 10);
+        store(cache, "http://foo", "\"v1\"", "123456");
+        for (Path body : (Iterable<Path>) Files.list(directory)::iterator) {
+            Files.setLastModifiedTime(body, FileTime.fromMillis(0));
+        }
+        store(cache, "http://bar", "\"v1\"", "789012");
+        assertNull("least recently used entry should be evicted", cache.get("http://foo"));
+        HttpInputCache.Entry entry = cache.get("http://bar");
+        assertNotNull(entry);
+        entry.close();
+    }
+}
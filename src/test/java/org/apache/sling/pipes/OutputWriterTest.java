@@ -18,16 +18,30 @@ package org.apache.sling.pipes;
 
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.ModifiableValueMap;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.apache.sling.pipes.internal.JsonWriter;
 import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
 import org.junit.Test;
 
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class OutputWriterTest extends AbstractPipeTest {
     OutputWriter writer = new OutputWriter() {
@@ -79,4 +93,88 @@ public class OutputWriterTest extends AbstractPipeTest {
         assertFalse(writer.customOutputs.isEmpty());
         assertEquals("${1}", writer.customOutputs.get("one"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSamplingParam() throws IOException {
+        assertEquals(OutputWriter.Sampling.FIRST, writer.getSampling());
+        initWithParam("sampling","Reservoir");
+        assertEquals(OutputWriter.Sampling.RESERVOIR, writer.getSampling());
+    }
+
+    /**
+     * writes 100 resources, max being 10, and returns the index of written ones
+     */
+    List<Integer> sample(OutputWriter.Sampling sampling) {
+        List<Integer> written = new ArrayList<>();
+        OutputWriter recorder = new OutputWriter() {
+            @Override
+            public boolean handleRequest(SlingHttpServletRequest request) {
+                return false;
+            }
+
+            @Override
+            protected void initResponse(SlingHttpServletResponse response) {
+            }
+
+            @Override
+            public void starts() {
+            }
+
+            @Override
+            protected void writeItem(Resource resource) {
+                written.add(Integer.parseInt(resource.getName()));
+            }
+
+            @Override
+            public void ends() {
+                writeSamples();
+            }
+        };
+        recorder.setSampling(sampling);
+        for (int i = 0; i < 100; i++) {
+            recorder.write(new SyntheticResource(context.resourceResolver(), "/sample/" + i, "test"));
+        }
+        recorder.ends();
+        assertEquals(100, recorder.size);
+        return written;
+    }
+
+    @Test
+    public void testFirstSampling() {
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), sample(OutputWriter.Sampling.FIRST));
+    }
+
+    @Test
+    public void testLastSampling() {
+        assertEquals(Arrays.asList(90, 91, 92, 93, 94, 95, 96, 97, 98, 99), sample(OutputWriter.Sampling.LAST));
+    }
+
+    @Test
+    public void testReservoirSampling() {
+        List<Integer> written = sample(OutputWriter.Sampling.RESERVOIR);
+        assertEquals("max items should be written", 10, written.size());
+        assertEquals("items should be distinct", 10, new HashSet<>(written).size());
+        List<Integer> sorted = new ArrayList<>(written);
+        Collections.sort(sorted);
+        assertEquals("items should be written in output order", sorted, written);
+    }
+
+    @Test
+    public void testPipeSampling() throws Exception {
+        Pipe pipe = plumber.newPipe(context.resourceResolver()).echo(PATH_FRUITS).children("nt:unstructured").build();
+        pipe.getResource().adaptTo(ModifiableValueMap.class).put(OutputWriter.PARAM_SAMPLING, "last");
+        context.resourceResolver().commit();
+        JsonWriter json = new JsonWriter(new StringWriter());
+        json.setMax(1);
+        json.setCustomOutputs(Collections.singletonMap("title", "${two['jcr:title']}"));
+        json.starts();
+        plumber.execute(context.resourceResolver(), pipe.getResource().getPath(), null, json, true);
+        JsonObject output = Json.createReader(new StringReader(json.toString())).readObject();
+        assertEquals("last", output.getString(OutputWriter.KEY_SAMPLING));
+        assertEquals(2, output.getInt(OutputWriter.KEY_SIZE));
+        JsonArray items = output.getJsonArray(OutputWriter.KEY_ITEMS);
+        assertEquals(1, items.size());
+        assertEquals("values should be the ones computed when the item was written", "Banana", items.getJsonObject(0).getString("title"));
+        assertTrue(items.getJsonObject(0).getString(OutputWriter.PATH_KEY).endsWith("banana"));
+    }
+}
@@ -16,22 +16,31 @@
  */
 package org.apache.sling.pipes;
 
+import org.apache.commons.collections4.IteratorUtils;
+import org.apache.sling.api.resource.AbstractResourceVisitor;
+import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.pipes.internal.JsonUtil;
 import org.junit.Test;
 
 import javax.json.JsonObject;
 
+import java.io.CharArrayWriter;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import static org.apache.sling.pipes.internal.PlumberImpl.PIPES_REPOSITORY_PATH;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class PipeBuilderTest extends AbstractPipeTest {
@@ -54,6 +63,46 @@ public class PipeBuilderTest extends AbstractPipeTest {
         assertNotNull("there should be a lemon created", context.resourceResolver().getResource(lemonPath));
     }
 
+    @Test
+    public void transientRun() throws Exception {
+        ExecutionResult result = plumber.newPipe(context.resourceResolver())
+                .echo(PATH_FRUITS).children("nt:unstructured").outputs("title", "${two['jcr:title']}")
+                .write("tested", true, "child/inner", "${name.two}")
+                .run();
+        assertEquals(2, result.size());
+        assertNull("pipe configuration should not have been persisted", context.resourceResolver().getResource(PIPES_REPOSITORY_PATH));
+        ValueMap properties = context.resourceResolver().getResource(PATH_APPLE).adaptTo(ValueMap.class);
+        assertTrue("properties should have been written", properties.get("tested", false));
+        assertEquals("apple", context.resourceResolver().getResource(PATH_APPLE + "/child").getValueMap().get("inner", String.class));
+        plumber.newPipe(context.resourceResolver()).echo(PATH_APPLE).persistent().run();
+        assertNotNull("pipe configuration should have been persisted", context.resourceResolver().getResource(PIPES_REPOSITORY_PATH));
+    }
+
+    @Test
+    public void persistentRun() throws Exception {
+        ExecutionResult result = plumber.newPipe(context.resourceResolver())
+                .echo(PATH_APPLE).write("tested", true)
+                .persistent().run();
+        assertEquals(1, result.size());
+        assertTrue("properties should have been written",
+                context.resourceResolver().getResource(PATH_APPLE).getValueMap().get("tested", false));
+        List<Resource> persisted = new ArrayList<>();
+        new AbstractResourceVisitor() {
+            @Override
+            protected void visit(Resource resource) {
+                if (resource.getValueMap().containsKey(BasePipe.PN_STATUS)) {
+                    persisted.add(resource);
+                }
+            }
+        }.accept(context.resourceResolver().getResource(PIPES_REPOSITORY_PATH));
+        assertEquals("one pipe configuration should have been persisted", 1, persisted.size());
+        Resource pipe = persisted.get(0);
+        assertEquals(BasePipe.STATUS_FINISHED, pipe.getValueMap().get(BasePipe.PN_STATUS, String.class));
+        Resource conf = pipe.getChild(Pipe.NN_CONF);
+        assertNotNull("persisted configuration should hold the steps", conf);
+        assertEquals(2, IteratorUtils.size(conf.listChildren()));
+    }
+
     @Test
     public void dryRun() throws Exception {
         String lemonPath = "/content/fruits/lemon";
@@ -133,4 +182,29 @@ public class PipeBuilderTest extends AbstractPipeTest {
                     .collect(Collectors.toList());
         assertArrayEquals("all transformed items should be here", new String[] {"Pea", "Plum", "Carrot"}, names.toArray());
     }
+
+    /**
+     * writer counting flushes
+     */
+    static class FlushCountingWriter extends CharArrayWriter {
+        int flushes = 0;
+
+        @Override
+        public void flush() {
+            flushes++;
+            super.flush();
+        }
+    }
+
+    @Test
+    public void testStreamedRun() throws Exception {
+        String array = IntStream.range(0, 250).mapToObj(Integer::toString).collect(Collectors.joining(",", "[", "]"));
+        FlushCountingWriter output = new FlushCountingWriter();
+        ExecutionResult result = plumber.newPipe(context.resourceResolver())
+                .echo(PATH_FRUITS).json(array).name("item").run(null, output);
+        assertEquals(250, result.size());
+        assertEquals("result should only keep a summary", "{\"size\":250}", result.toString());
+        assertEquals("all items should be streamed", 250, JsonUtil.parseObject(output.toString()).getJsonArray("items").size());
+        assertTrue("output should be flushed while written", output.flushes > 2);
+    }
 }
\ No newline at end of file
@@ -18,11 +18,16 @@ package org.apache.sling.pipes.internal;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.ModifiableValueMap;
 import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.pipes.AbstractPipeTest;
 import org.apache.sling.pipes.CommandUtil;
 import org.apache.sling.pipes.ExecutionResult;
+import org.apache.sling.pipes.OutputWriter;
+import org.apache.sling.pipes.Pipe;
 import org.apache.sling.pipes.PipeBuilder;
 import org.apache.sling.testing.mock.sling.ResourceResolverType;
 import org.apache.sling.testing.mock.sling.junit.SlingContext;
@@ -34,7 +39,10 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -48,7 +56,12 @@ import static org.apache.sling.pipes.internal.CommandExecutorImpl.PARAMS_SEPARAT
 import static org.apache.sling.pipes.CommandUtil.keyValuesToArray;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import javax.json.JsonArray;
@@ -251,7 +264,10 @@ public class CommandExecutorImplTest extends AbstractPipeTest {
     }
 
     JsonObject executeFile(String fileName) throws IOException, ServletException {
-        Map<String, Object> params = new HashMap<>();
+        return executeFile(fileName, new HashMap<>());
+    }
+
+    JsonObject executeFile(String fileName, Map<String, Object> params) throws IOException, ServletException {
         params.put(CommandExecutorImpl.REQ_PARAM_FILE, IOUtils.toString(getClass().getResourceAsStream("/" + fileName
                 + ".txt"), "UTF-8"));
         return testServlet(params);
@@ -310,4 +326,134 @@ public class CommandExecutorImplTest extends AbstractPipeTest {
         assertArrayEquals(new String[]{"/content/pages/1/leaves/child1","/content/pages/1/leaves/child2",
                 "/content/pages/2/leaves/child1","/content/pages/2/leaves/child2"}, getItemsArray(response));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParseCache() throws InvocationTargetException, IllegalAccessException {
+        String command = "echo /content/fruits | children nt:unstructured @ name fruit | write test=${name.fruit}";
+        List<CommandExecutorImpl.Token> tokens = commands.compile(command);
+        List<CommandExecutorImpl.Token> cached = commands.compile(command + " ");
+        assertEquals("second compilation should come from the cache", 1, commands.parseCache.size());
+        assertSame("cached tokens should keep their resolved method", tokens.get(2).method, cached.get(2).method);
+        assertNotSame("cached tokens should not be shared", tokens.get(2).conf, cached.get(2).conf);
+        ExecutionResult result = commands.parse(context.resourceResolver(), command).run();
+        assertEquals(2, result.size());
+        assertEquals("apple", context.resourceResolver().getResource(PATH_APPLE).getValueMap().get("test"));
+        result = commands.parse(context.resourceResolver(), command).run();
+        assertEquals("replayed command should produce the same output", 2, result.size());
+    }
+
+    @Test
+    public void testPersistedCommandReuse() throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        request.setParameterMap(Collections.singletonMap(CommandExecutorImpl.REQ_PARAM_CMD, "echo /content | mkdir foo | write type=bar"));
+        request.setMethod("POST");
+        commands.doPost(request, new MockSlingHttpServletResponse());
+        assertEquals(1, commands.persistedCommands.size());
+        String path = commands.persistedCommands.values().iterator().next();
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        commands.doPost(request, response);
+        assertEquals(200, response.getStatus());
+        assertEquals("unchanged command should reuse its persisted pipe", path,
+                commands.persistedCommands.values().iterator().next());
+        context.resourceResolver().getResource(path).adaptTo(ModifiableValueMap.class)
+                .put(CommandExecutorImpl.PN_DESCRIPTION, "echo /content");
+        commands.doPost(request, new MockSlingHttpServletResponse());
+        assertNotEquals("altered pipe should not be reused", path, commands.persistedCommands.values().iterator().next());
+    }
+
+    @Test
+    public void testPersistedCommandPurge() throws Exception {
+        MockSlingHttpServletRequest request = context.request();
+        request.setParameterMap(Collections.singletonMap(CommandExecutorImpl.REQ_PARAM_CMD, "echo /content | mkdir foo | write type=bar"));
+        request.setMethod("POST");
+        commands.doPost(request, new MockSlingHttpServletResponse());
+        ResourceResolver resolver = context.resourceResolver();
+        Resource pipe = resolver.getResource(commands.persistedCommands.values().iterator().next());
+        context.create().resource("/var/pipes/2018/4/5");
+        String oldPath = resolver.move(pipe.getPath(), "/var/pipes/2018/4/5").getPath();
+        resolver.commit();
+        commands.persistedCommands.replaceAll((key, path) -> oldPath);
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        commands.doPost(request, response);
+        assertEquals(200, response.getStatus());
+        String path = commands.persistedCommands.values().iterator().next();
+        assertNotEquals("pipe of an expired date folder should not be reused", oldPath, path);
+        ((PlumberImpl) plumber).purge(resolver, Instant.now(), 31);
+        response = new MockSlingHttpServletResponse();
+        commands.doPost(request, response);
+        assertEquals("execution after a purge should succeed", 200, response.getStatus());
+        assertEquals("recent pipe should be reused after a purge", path, commands.persistedCommands.values().iterator().next());
+    }
+
+    @Test
+    public void testPersistedCommandReservation() throws Exception {
+        String command = "echo /content | mkdir foo";
+        ResourceResolver resolver = context.resourceResolver();
+        Pipe pipe = commands.getCommandPipe(resolver, command);
+        commands.releaseCommandPipe(resolver, command, pipe);
+        Pipe reserved = commands.getPersistedPipe(resolver, command);
+        assertEquals("released pipe should be reused", pipe.getResource().getPath(), reserved.getResource().getPath());
+        assertNull("reserved pipe should not be handed out twice", commands.getPersistedPipe(resolver, command));
+        assertNotEquals("concurrent execution should build its own pipe", pipe.getResource().getPath(),
+                commands.getCommandPipe(resolver, command).getResource().getPath());
+        commands.releaseCommandPipe(resolver, command, reserved);
+        assertEquals(pipe.getResource().getPath(), commands.getPersistedPipe(resolver, command).getResource().getPath());
+    }
+
+    @Test
+    public void testBatch() throws IOException, ServletException {
+        Map<String, Object> params = new HashMap<>();
+        params.put(CommandExecutorImpl.REQ_PARAM_BATCH, "true");
+        params.put(CommandExecutorImpl.REQ_PARAM_FILE, "echo /content | mkdir batch\n\necho /content/batch | write done=true");
+        JsonObject response = testServlet(params);
+        assertArrayEquals("second command should see first command's changes", new String[]{"/content/batch", "/content/batch"},
+                getItemsArray(response));
+        assertEquals(true, context.resourceResolver().getResource("/content/batch").getValueMap().get("done"));
+        assertFalse("batch should be committed", context.resourceResolver().hasChanges());
+    }
+
+    @Test
+    public void testChainedBatch() throws IOException, ServletException {
+        Map<String, Object> params = new HashMap<>();
+        params.put(CommandExecutorImpl.REQ_PARAM_BATCH, "true");
+        JsonObject response = executeFile("chainedCommand", params);
+        assertEquals("cmd_line_N bindings should still be available", 5, response.getJsonNumber("size").intValue());
+    }
+
+    @Test
+    public void testParallelBatch() throws Exception {
+        List<Pipe> pipes = Arrays.asList(
+                commands.getCommandPipe(context.resourceResolver(), "echo " + PATH_APPLE),
+                commands.getCommandPipe(context.resourceResolver(), "echo " + PATH_BANANA),
+                commands.getCommandPipe(context.resourceResolver(), "echo /content | mkdir foo"),
+                commands.getCommandPipe(context.resourceResolver(), "echo /content/foo"));
+        Pipe batch = commands.buildBatch(context.resourceResolver(), pipes, 2);
+        List<String> types = new ArrayList<>();
+        batch.getResource().getChild(Pipe.NN_CONF).listChildren().forEachRemaining(r -> types.add(r.getResourceType()));
+        assertEquals("read only commands should be grouped", Arrays.asList(ManifoldPipe.RESOURCE_TYPE,
+                ReferencePipe.RESOURCE_TYPE, ReferencePipe.RESOURCE_TYPE), types);
+        OutputWriter writer = new JsonWriter();
+        writer.starts();
+        ExecutionResult result = plumber.execute(context.resourceResolver(), batch, null, writer, true);
+        assertEquals(4, result.size());
+        assertTrue(result.toString().contains(PATH_APPLE) && result.toString().contains(PATH_BANANA));
+        assertNotNull(context.resourceResolver().getResource("/content/foo"));
+    }
+
+    @Test
+    public void testParallelBatchAfterWrite() throws Exception {
+        List<Pipe> pipes = Arrays.asList(
+                commands.getCommandPipe(context.resourceResolver(), "echo /content | mkdir parallel | write done=true"),
+                commands.getCommandPipe(context.resourceResolver(), "echo /content/parallel"),
+                commands.getCommandPipe(context.resourceResolver(), "echo /content/parallel | children nt:base"));
+        Pipe batch = commands.buildBatch(context.resourceResolver(), pipes, 2);
+        List<String> types = new ArrayList<>();
+        batch.getResource().getChild(Pipe.NN_CONF).listChildren().forEachRemaining(r -> types.add(r.getResourceType()));
+        assertEquals("reads following a write should not run in parallel", Arrays.asList(ReferencePipe.RESOURCE_TYPE,
+                ReferencePipe.RESOURCE_TYPE, ReferencePipe.RESOURCE_TYPE), types);
+        OutputWriter writer = new JsonWriter();
+        writer.starts();
+        ExecutionResult result = plumber.execute(context.resourceResolver(), batch, null, writer, true);
+        assertEquals("reads should see the write of the same batch", 2, result.size());
+    }
+}
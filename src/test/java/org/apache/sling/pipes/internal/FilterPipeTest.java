@@ -26,13 +26,24 @@ import org.apache.sling.pipes.ExecutionResult;
 import org.apache.sling.pipes.Pipe;
 import org.junit.Test;
 
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * testing different kind of filters
@@ -49,6 +60,14 @@ public class FilterPipeTest extends AbstractPipeTest {
         context.load().json("/filter.json", PATH_PIPE);
     }
 
+    @Test
+    public void testUnconfiguredFlagsAreConstant() throws RepositoryException {
+        FilterPipe pipe = (FilterPipe) getPipe(PATH_PIPE + "/" + NN_PROPERTIES + "/conf/filter");
+        pipe.filterPasses(context.resourceResolver().getResource(PATH_APPLE), pipe.getConfiguration());
+        assertNull("absent noChildren should not be evaluated as an expression", pipe.condition.noChildren.expression);
+        assertNull("absent injectChildrenCount should not be evaluated as an expression", pipe.condition.injectChildrenCount.expression);
+    }
+
     @Test
     public void testFilterProperties(){
         Iterator<Resource> resourceIterator = getOutput(PATH_PIPE + "/" + NN_PROPERTIES);
@@ -129,6 +148,18 @@ public class FilterPipeTest extends AbstractPipeTest {
         assertEquals("there should be an item", 1, outputs.size());
     }
 
+    @Test
+    public void testPropertyLiteral() throws Exception {
+        Collection<String> outputs = plumber.newPipe(context.resourceResolver())
+            .echo(PATH_FRUITS).children("nt:unstructured")
+            .grep("color","green").run().getCurrentPathSet();
+        assertEquals("only apple should be green", Collections.singleton(PATH_APPLE), outputs);
+        outputs = plumber.newPipe(context.resourceResolver())
+            .echo(PATH_APPLE)
+            .grep("color","gre").run().getCurrentPathSet();
+        assertTrue("literal value should be matched as a whole", outputs.isEmpty());
+    }
+
     @Test
     public void testChildrenCount() throws Exception {
         Collection<String> outputs = plumber.newPipe(context.resourceResolver())
@@ -137,4 +168,49 @@ public class FilterPipeTest extends AbstractPipeTest {
             .run().getCurrentPathSet();
         assertEquals("there should be one output", 1, outputs.size());
     }
+
+    @Test
+    public void testChildrenCountLimit() throws Exception {
+        Collection<String> outputs = plumber.newPipe(context.resourceResolver())
+            .echo(PATH_APPLE + "/isnota")
+            .grep("slingPipesFilter_injectChildrenCount","${true}","slingPipesFilter_childrenCountLimit", 2,
+                    "slingPipesFilter_test","${childrenCount==2}")
+            .run().getCurrentPathSet();
+        assertEquals("children count should stop at configured limit", 1, outputs.size());
+    }
+
+    @Test
+    public void testChildrenCountStopsAtLimit() throws Exception {
+        Node node = mock(Node.class);
+        NodeIterator children = mock(NodeIterator.class);
+        when(node.getNodes()).thenReturn(children);
+        when(children.getSize()).thenReturn(1000L);
+        when(children.hasNext()).thenReturn(true);
+        assertEquals(3, FilterPipe.countChildren(node, 3));
+        verify(children, never()).getSize();
+        verify(children, times(3)).nextNode();
+        assertEquals("without limit, repository size should be used", 1000, FilterPipe.countChildren(node, -1));
+    }
+
+    @Test
+    public void testChildrenCountLimitOnLargeNode() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            context.build().resource("/content/large/child" + i);
+        }
+        Collection<String> outputs = plumber.newPipe(context.resourceResolver())
+            .echo("/content/large")
+            .grep("slingPipesFilter_injectChildrenCount","${true}","slingPipesFilter_childrenCountLimit", 3,
+                    "slingPipesFilter_test","${childrenCount==3}")
+            .run().getCurrentPathSet();
+        assertEquals("children count of 10 children should be capped at 3", 1, outputs.size());
+    }
+
+    @Test
+    public void testInvalidChildrenCountLimit() throws RepositoryException {
+        FilterPipe pipe = (FilterPipe) getPipe(PATH_PIPE + "/" + NN_PROPERTIES + "/conf/filter");
+        pipe.getConfiguration().adaptTo(ModifiableValueMap.class).put(FilterPipe.PN_CHILDRENCOUNTLIMIT, "lots");
+        Resource apple = context.resourceResolver().getResource(PATH_APPLE);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> pipe.filterPasses(apple, pipe.getConfiguration()));
+        assertTrue("error should name the misconfigured property", e.getMessage().contains(FilterPipe.PN_CHILDRENCOUNTLIMIT));
+    }
 }
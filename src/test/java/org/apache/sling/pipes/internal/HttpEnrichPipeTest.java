@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes.internal;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.pipes.AbstractPipeTest;
+import org.apache.sling.pipes.ExecutionResult;
+import org.apache.sling.pipes.Pipe;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+import static org.apache.sling.api.resource.ResourceResolver.PROPERTY_RESOURCE_TYPE;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * testing http enrich pipe
+ */
+public class HttpEnrichPipeTest extends AbstractPipeTest {
+
+    static final String PATH_ENRICH = "/etc/enrich";
+
+    @Rule
+    public WireMockRule http = new WireMockRule(PORT);
+
+    @Before
+    public void setup() throws PersistenceException {
+        super.setup();
+        http.givenThat(get(urlEqualTo("/colors/apple.json"))
+                .willReturn(aResponse().withStatus(200).withFixedDelay(500).withBody("{\"color\":\"red\"}")));
+        http.givenThat(get(urlEqualTo("/colors/banana.json"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"color\":\"brown\"}")));
+    }
+
+    /**
+     * builds an enrich pipe over fruits
+     * @param conf additional configuration of the enrich pipe
+     */
+    void buildEnrichPipe(Object... conf) throws PersistenceException, IllegalAccessException {
+        ResourceResolver resolver = context.resourceResolver();
+        Pipe pipe = plumber.newPipe(resolver).echo(PATH_FRUITS).children("nt:unstructured").name("fruit").build(PATH_ENRICH);
+        ModifiableValueMap properties = pipe.getResource().adaptTo(ModifiableValueMap.class);
+        properties.put(PROPERTY_RESOURCE_TYPE, HttpEnrichPipe.RESOURCE_TYPE);
+        properties.put(Pipe.PN_EXPR, baseUrl + "/colors/${name.fruit}.json");
+        for (int i = 0; i < conf.length; i += 2) {
+            properties.put((String) conf[i], conf[i + 1]);
+        }
+        resolver.commit();
+    }
+
+    @Test
+    public void testEnrich() throws Exception {
+        buildEnrichPipe();
+        ExecutionResult result = execute("ref " + PATH_ENRICH + " | write color=${enrich.color}");
+        assertEquals("{\"items\":[\"" + PATH_APPLE + "\",\"" + PATH_BANANA + "\"],\"size\":2}", result.toString());
+        assertEquals("red", context.resourceResolver().getResource(PATH_APPLE).getValueMap().get("color"));
+        assertEquals("brown", context.resourceResolver().getResource(PATH_BANANA).getValueMap().get("color"));
+    }
+
+    @Test
+    public void testUnordered() throws Exception {
+        buildEnrichPipe(HttpEnrichPipe.PN_ORDERED, false);
+        ExecutionResult result = execute("ref " + PATH_ENRICH);
+        assertEquals("slow response should come last",
+                "{\"items\":[\"" + PATH_BANANA + "\",\"" + PATH_APPLE + "\"],\"size\":2}", result.toString());
+    }
+
+    @Test
+    public void testMaxPerHost() throws Exception {
+        buildEnrichPipe(HttpEnrichPipe.PN_ORDERED, false, HttpEnrichPipe.PN_MAX_PER_HOST, 1);
+        ExecutionResult result = execute("ref " + PATH_ENRICH);
+        assertEquals("second request should wait for the slow one",
+                "{\"items\":[\"" + PATH_APPLE + "\",\"" + PATH_BANANA + "\"],\"size\":2}", result.toString());
+    }
+
+    @Test
+    public void testBackoffReleasesHost() throws Exception {
+        http.givenThat(get(urlEqualTo("/colors/apple.json")).inScenario("backoff").whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(503)).willSetStateTo("available"));
+        http.givenThat(get(urlEqualTo("/colors/apple.json")).inScenario("backoff").whenScenarioStateIs("available")
+                .willReturn(aResponse().withStatus(200).withBody("{\"color\":\"red\"}")));
+        buildEnrichPipe(HttpEnrichPipe.PN_ORDERED, false, HttpEnrichPipe.PN_MAX_PER_HOST, 1,
+                HttpEnrichPipe.PN_RETRY_DELAY, 500L);
+        ExecutionResult result = execute("ref " + PATH_ENRICH);
+        assertEquals("request waiting for a retry should not hold its host",
+                "{\"items\":[\"" + PATH_BANANA + "\",\"" + PATH_APPLE + "\"],\"size\":2}", result.toString());
+        http.verify(2, getRequestedFor(urlEqualTo("/colors/apple.json")));
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        http.givenThat(get(urlEqualTo("/colors/banana.json")).inScenario("retry").whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(503)).willSetStateTo("available"));
+        http.givenThat(get(urlEqualTo("/colors/banana.json")).inScenario("retry").whenScenarioStateIs("available")
+                .willReturn(aResponse().withStatus(200).withBody("{\"color\":\"brown\"}")));
+        buildEnrichPipe(HttpEnrichPipe.PN_RETRY_DELAY, 10L);
+        execute("ref " + PATH_ENRICH + " | write color=${enrich.color}");
+        assertEquals("brown", context.resourceResolver().getResource(PATH_BANANA).getValueMap().get("color"));
+        http.verify(2, getRequestedFor(urlEqualTo("/colors/banana.json")));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        http.givenThat(get(urlEqualTo("/colors/banana.json")).willReturn(aResponse().withStatus(404)));
+        buildEnrichPipe();
+        ExecutionResult result = execute("ref " + PATH_ENRICH);
+        assertEquals("failed resource should be skipped", 1, result.size());
+        http.verify(1, getRequestedFor(urlEqualTo("/colors/banana.json")));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes.internal;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.pipes.BasePipe;
+import org.apache.sling.pipes.ExecutionResult;
+import org.apache.sling.pipes.Pipe;
+import org.apache.sling.pipes.Plumber;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PipeMonitorTest {
+
+    PipeMonitor newMonitor() {
+        Pipe pipe = mock(Pipe.class);
+        Resource resource = mock(Resource.class);
+        when(resource.getPath()).thenReturn("/etc/pipes/monitored");
+        when(pipe.getName()).thenReturn("monitored");
+        when(pipe.getResource()).thenReturn(resource);
+        return new PipeMonitor(mock(Plumber.class), pipe);
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE}) {
+            int index = DurationHistogram.indexOf(value);
+            assertTrue(value + " should be in its bucket", DurationHistogram.highestValueOf(index) >= value);
+            assertTrue(value + " should be in its bucket", index == 0 || DurationHistogram.highestValueOf(index - 1) < value);
+            assertTrue(value + " bucket should be precise", DurationHistogram.highestValueOf(index) - value <= value / 8);
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        DurationHistogram histogram = new DurationHistogram();
+        assertEquals(0, histogram.percentile(50));
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(1000, histogram.max());
+        assertEquals(500, histogram.percentile(50), 500 / 8);
+        assertEquals(950, histogram.percentile(95), 950 / 8);
+        assertEquals(990, histogram.percentile(99), 990 / 8);
+        assertEquals(1000, histogram.percentile(100));
+    }
+
+    @Test
+    public void testConcurrentExecutions() throws InterruptedException {
+        PipeMonitor monitor = newMonitor();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 1000; i++) {
+            executor.execute(() -> {
+                long start = monitor.starts();
+                ExecutionResult result = mock(ExecutionResult.class);
+                when(result.size()).thenReturn(10L);
+                when(result.getNbErrors()).thenReturn(1L);
+                monitor.committed();
+                monitor.ends(start, result);
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertEquals(1000, monitor.getExecutionCount());
+        assertEquals(10000, monitor.getItemsCount());
+        assertEquals(1000, monitor.getErrorCount());
+        assertEquals(1000, monitor.getCommitCount());
+        assertEquals(BasePipe.STATUS_FINISHED, monitor.getStatus());
+        assertTrue(monitor.getLastThroughput() > 0);
+        assertTrue(monitor.getDurationP50Milliseconds() <= monitor.getDurationP99Milliseconds());
+        assertTrue(monitor.getDurationP99Milliseconds() <= monitor.getMaxDurationMilliseconds());
+    }
+
+    @Test
+    public void testFailure() {
+        PipeMonitor monitor = newMonitor();
+        monitor.starts();
+        assertEquals(BasePipe.STATUS_STARTED, monitor.getStatus());
+        monitor.failed();
+        assertEquals(BasePipe.STATUS_FINISHED, monitor.getStatus());
+        assertEquals(1, monitor.getFailed());
+        assertEquals(0, monitor.getExecutionCount());
+    }
+}
@@ -17,17 +17,47 @@
 package org.apache.sling.pipes.internal;
 
 import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceWrapper;
+import org.apache.sling.api.resource.observation.ResourceChange;
 import org.apache.sling.pipes.AbstractPipeTest;
+import org.apache.sling.pipes.BasePipe;
+import org.apache.sling.pipes.Pipe;
+import org.apache.sling.pipes.PipeBindings;
+import org.apache.sling.pipes.Plumber;
 import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.InvocationTargetException;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.Calendar;
+import java.util.Collections;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
 
 public class PlumberImplTest extends AbstractPipeTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PlumberImplTest.class);
+
+    /**
+     * pipe that can not be instantiated by the plumber
+     */
+    public static class WrongConstructorPipe extends BasePipe {
+        public WrongConstructorPipe(Plumber plumber, Resource resource) {
+            super(plumber, resource, null);
+        }
+    }
 
     @Test
     public void testPurge() throws InvocationTargetException, IllegalAccessException, PersistenceException {
@@ -40,4 +70,117 @@ public class PlumberImplTest extends AbstractPipeTest {
         assertNull("there should be no more /var/pipes/this/is resource", context.resourceResolver().getResource("/var/pipes/this/is"));
         assertNotNull("there should still be /var/pipes/this/should/stay resource", context.resourceResolver().getResource("/var/pipes/this/should/stay"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRegisterPipe() {
+        try {
+            plumber.registerPipe("test/wrongConstructor", WrongConstructorPipe.class);
+            throw new AssertionError("registration should have failed");
+        } catch (IllegalArgumentException e) {
+            assertFalse("type should not be registered", plumber.isTypeRegistered("test/wrongConstructor"));
+        }
+        Resource resource = context.create().resource("/content/unknownPipe", "sling:resourceType", "test/unknown");
+        assertNull("unknown type should not be instantiated", plumber.getPipe(resource));
+    }
+
+    /**
+     * compares pipe instantiation through the registry with reflection, run with -Dsling.pipes.benchmark=true
+     */
+    @Test
+    public void benchmarkGetPipe() throws Exception {
+        assumeTrue(Boolean.getBoolean("sling.pipes.benchmark"));
+        int nbPipes = 100000;
+        Resource resource = plumber.newPipe(context.resourceResolver()).echo(PATH_APPLE).build().getResource();
+        Class<? extends Pipe> pipeClass = ContainerPipe.class;
+        assertEquals(pipeClass, plumber.getPipe(resource).getClass());
+        for (int i = 0; i < nbPipes; i++) {
+            plumber.getPipe(resource);
+            pipeClass.getDeclaredConstructor(Plumber.class, Resource.class, PipeBindings.class).newInstance(plumber, resource, null);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < nbPipes; i++) {
+            pipeClass.getDeclaredConstructor(Plumber.class, Resource.class, PipeBindings.class).newInstance(plumber, resource, null);
+        }
+        long reflection = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < nbPipes; i++) {
+            plumber.getPipe(resource);
+        }
+        long registry = System.nanoTime() - start;
+        LOGGER.info("{} container pipes instantiated in {}ms through reflection, {}ms through the registry", nbPipes,
+                reflection / 1000000, registry / 1000000);
+    }
+
+    @Test
+    public void testPlanCache() throws PersistenceException {
+        Resource conf = context.create().resource("/etc/plans/write/conf", "foo", "bar");
+        context.create().resource("/etc/plans/write/conf/child", "jcr:primaryType", "nt:unstructured", "one", "two");
+        Resource other = context.create().resource("/content/plans/conf", "foo", "bar");
+        PipePlanCache cache = new PipePlanCache(new String[] {"/etc/plans"}, 10);
+        PipePlan plan = cache.get(conf);
+        assertEquals("bar", plan.getProperties().get("foo", String.class));
+        assertEquals("two", plan.getChild("child").getProperties().get("one", String.class));
+        assertSame("plan should be cached", plan, cache.get(conf));
+        assertNotSame("plan outside of configured paths should not be cached", cache.get(other), cache.get(other));
+
+        context.resourceResolver().getResource("/etc/plans/write/conf/child").adaptTo(ModifiableValueMap.class).put("one", "three");
+        context.resourceResolver().commit();
+        assertSame("change not observed yet, plan should still be cached", plan, cache.get(conf));
+        cache.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.CHANGED, "/etc/plans/write/conf/child", false)));
+        assertEquals("change in the tree should evict its plan", 0, cache.size());
+        plan = cache.get(conf);
+        assertEquals("three", plan.getChild("child").getProperties().get("one", String.class));
+
+        conf.adaptTo(ModifiableValueMap.class).put("jcr:lastModified", Calendar.getInstance());
+        context.resourceResolver().commit();
+        assertNotSame("modified configuration should be compiled again", plan, cache.get(conf));
+    }
+
+    @Test
+    public void testPlanCacheChangeDuringCompilation() {
+        Resource conf = context.create().resource("/etc/plans/race/conf", "foo", "bar");
+        context.create().resource("/etc/plans/race/conf/child", "one", "two");
+        PipePlanCache cache = new PipePlanCache(new String[] {"/etc/plans"}, 10);
+        Resource changing = new ResourceWrapper(conf) {
+            @Override
+            public Iterable<Resource> getChildren() {
+                cache.onChange(Collections.singletonList(new ResourceChange(ResourceChange.ChangeType.CHANGED, "/etc/plans/race/conf/child", false)));
+                return super.getChildren();
+            }
+        };
+        cache.get(changing);
+        assertEquals("plan compiled while a change was observed should not be cached", 0, cache.size());
+        PipePlan plan = cache.get(conf);
+        assertSame("plan compiled afterwards should be cached", plan, cache.get(conf));
+    }
+
+    @Test
+    public void testPurgeDateFolders() throws PersistenceException {
+        PlumberImpl plumberImpl = (PlumberImpl) plumber;
+        context.create().resource("/var/pipes/2018/4/5/old1/conf/one", "foo", "bar");
+        context.create().resource("/var/pipes/2018/4/5/old2/conf/one", "foo", "bar");
+        context.create().resource("/var/pipes/2018/11/31/old3");
+        String recent = plumberImpl.generateUniquePath();
+        context.create().resource(recent + "/conf/one", "foo", "bar");
+        context.resourceResolver().commit();
+        plumberImpl.purge(context.resourceResolver(), Instant.now(), 30);
+        assertNull("old year folder should have been pruned", context.resourceResolver().getResource("/var/pipes/2018"));
+        assertNotNull("recent pipe should still be there", context.resourceResolver().getResource(recent + "/conf/one"));
+        assertEquals("3 pipe instances, 2 day, 2 month & 1 year folders should have been removed", 8, plumberImpl.getLastPurgeDeletedResources());
+        ZonedDateTime old = Instant.now().atZone(ZoneId.systemDefault()).minusDays(40);
+        String oldPath = String.format("/var/pipes/%d/%d/%d/old4", old.getYear(), old.getMonthValue() - 1, old.getDayOfMonth());
+        context.create().resource(oldPath);
+        context.resourceResolver().commit();
+        plumberImpl.purge(context.resourceResolver(), Instant.now(), 30);
+        assertNull("40 days old pipe should have been removed", context.resourceResolver().getResource(oldPath));
+        assertNotNull("recent pipe should still be there", context.resourceResolver().getResource(recent));
+        context.create().resource("/var/pipes/2018/4/5/used", BasePipe.PN_STATUS_MODIFIED, Calendar.getInstance());
+        context.create().resource("/var/pipes/2018/4/5/unused");
+        context.resourceResolver().commit();
+        plumberImpl.purge(context.resourceResolver(), Instant.now(), 30);
+        assertNotNull("old pipe still in use should be kept", context.resourceResolver().getResource("/var/pipes/2018/4/5/used"));
+        assertNull("old pipe not used since should be removed", context.resourceResolver().getResource("/var/pipes/2018/4/5/unused"));
+        assertNull(PlumberImpl.bucketStart(LocalDate.of(2020, 2, 1), ChronoUnit.DAYS, "30"));
+        assertEquals(LocalDate.of(2020, 12, 1), PlumberImpl.bucketStart(LocalDate.of(2020, 1, 1), ChronoUnit.MONTHS, "11"));
+    }
+}
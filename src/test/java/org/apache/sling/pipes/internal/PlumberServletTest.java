@@ -16,6 +16,7 @@
  */
 package org.apache.sling.pipes.internal;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
@@ -35,16 +36,26 @@ import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -204,6 +215,85 @@ public class PlumberServletTest extends AbstractPipeTest {
         assertDummyTree(DUMMYTREE_TEST_SIZE);
     }
 
+    @Test
+    public void testDummyTreeNdJson() throws Exception {
+        SlingHttpServletRequest request = mockPlumberServletRequest(context.resourceResolver(), NdJsonWriter.NDJSON_EXTENSION, dummyTreePath, null, null, null, null, null);
+        servlet.execute(request, response, false);
+        String[] lines = stringResponse.toString().split("\n");
+        assertEquals("there should be one line per item, and a summary", DUMMYTREE_TEST_SIZE + 1, lines.length);
+        for (int i = 0; i < DUMMYTREE_TEST_SIZE; i++) {
+            JsonObject item = Json.createReader(new StringReader(lines[i])).readObject();
+            assertTrue("each item line should hold a path", item.getString(OutputWriter.PATH_KEY).startsWith("/"));
+        }
+        JsonObject summary = Json.createReader(new StringReader(lines[DUMMYTREE_TEST_SIZE])).readObject();
+        assertEquals("last line should be the summary", DUMMYTREE_TEST_SIZE, summary.getInt(OutputWriter.KEY_SIZE));
+    }
+
+    @Test
+    public void testGzippedDummyTree() throws Exception {
+        SlingHttpServletRequest request = mockPlumberServletRequest(context.resourceResolver(), "json", dummyTreePath, null, null, null, null, null);
+        when(request.getHeader(GzipResponse.HEADER_ACCEPT_ENCODING)).thenReturn("deflate, gzip;q=0.8");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SlingHttpServletResponse gzipResponse = mock(SlingHttpServletResponse.class);
+        when(gzipResponse.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                bytes.write(b);
+            }
+        });
+        servlet.execute(request, gzipResponse, false);
+        verify(gzipResponse).setHeader(GzipResponse.HEADER_CONTENT_ENCODING, GzipResponse.GZIP);
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray())), StandardCharsets.UTF_8)) {
+            stringResponse.append(IOUtils.toString(reader));
+        }
+        assertDummyTree();
+    }
+
+    @Test
+    public void testGzippedFailure() throws Exception {
+        context.create().resource("/content/broken", "sling:resourceType", "test/unknown");
+        SlingHttpServletRequest request = mockPlumberServletRequest(context.resourceResolver(), "json", "/content/broken", null, null, null, null, null);
+        when(request.getHeader(GzipResponse.HEADER_ACCEPT_ENCODING)).thenReturn("gzip");
+        SlingHttpServletResponse gzipResponse = mock(SlingHttpServletResponse.class);
+        when(gzipResponse.getOutputStream()).thenReturn(mock(ServletOutputStream.class));
+        try {
+            servlet.execute(request, gzipResponse, false);
+            fail("execution of a broken pipe should fail");
+        } catch (ServletException e) {
+            verify(gzipResponse).setHeader(GzipResponse.HEADER_CONTENT_ENCODING, GzipResponse.GZIP);
+            verify(gzipResponse).setHeader(GzipResponse.HEADER_CONTENT_ENCODING, null);
+        }
+    }
+
+    @Test
+    public void testGzipWriteListener() throws Exception {
+        SlingHttpServletResponse response = mock(SlingHttpServletResponse.class);
+        ServletOutputStream wrapped = mock(ServletOutputStream.class);
+        when(response.getOutputStream()).thenReturn(wrapped);
+        WriteListener listener = mock(WriteListener.class);
+        new GzipResponse(response).getOutputStream().setWriteListener(listener);
+        verify(wrapped).setWriteListener(listener);
+    }
+
+    @Test
+    public void testAcceptsGzip() {
+        SlingHttpServletRequest request = mock(SlingHttpServletRequest.class);
+        assertFalse("no header, no compression", GzipResponse.accepts(request));
+        when(request.getHeader(GzipResponse.HEADER_ACCEPT_ENCODING)).thenReturn("gzip;q=0, br");
+        assertFalse("gzip explicitly refused", GzipResponse.accepts(request));
+        when(request.getHeader(GzipResponse.HEADER_ACCEPT_ENCODING)).thenReturn("br, GZIP");
+        assertTrue("gzip accepted", GzipResponse.accepts(request));
+    }
+
     public static SlingHttpServletRequest mockPlumberServletRequest(ResourceResolver resolver,
                                                                     String extension,
                                                                     String path,
@@ -19,19 +19,27 @@ package org.apache.sling.pipes.internal;
 import org.apache.commons.collections4.IteratorUtils;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.pipes.AbstractPipeTest;
+import org.apache.sling.pipes.Pipe;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.cglib.core.CollectionUtils;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 /**
  * Testing traverse pipes and its different configurations on the same resource tree
@@ -83,6 +91,67 @@ public class TraversePipeTest extends AbstractPipeTest {
         assertListEquals(getResourceNameList("depthLimit"), "tree", "fruits", "vegetables");
     }
 
+    @Test
+    public void testParallel() throws Exception {
+        assertListEquals(getResourceNameList("parallel"), "tree", "fruits", "apple", "banana", "vegetables", "leek", "carrot");
+    }
+
+    @Test
+    public void testParallelUnordered() throws Exception {
+        Set<String> names = new HashSet<>(getResourceNameList("parallelUnordered"));
+        assertEquals("should contain all nodes", new HashSet<>(Arrays.asList("tree", "fruits", "apple", "banana", "vegetables", "leek", "carrot")), names);
+    }
+
+    @Test
+    public void testParallelProperties() throws Exception {
+        assertEquals("should output the same properties as a sequential traversal",
+                getResourceList("properties").stream().map(Resource::getPath).collect(Collectors.toList()),
+                getResourceList("parallelProperties").stream().map(Resource::getPath).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testParallelCancel() throws Exception {
+        Pipe pipe = getPipe(CONF_ROOT + "parallel");
+        Iterator<Resource> output = pipe.getOutput();
+        assertTrue("there should be a first item", output.hasNext());
+        output.next();
+        pipe.after();
+        assertFalse("cancelled traversal should not output anything anymore", output.hasNext());
+    }
+
+    @Test
+    public void testSkipNames() throws Exception {
+        assertListEquals(getResourceNameList("skipNames"), "tree", "fruits", "apple", "banana");
+    }
+
+    @Test
+    public void testSkipTypes() throws Exception {
+        assertListEquals(getResourceNameList("skipTypes"), "tree", "fruits", "apple", "banana");
+    }
+
+    @Test
+    public void testStopNames() throws Exception {
+        assertListEquals(getResourceNameList("stopNames"), "tree", "fruits", "vegetables", "leek", "carrot");
+        assertListEquals(getResourceNameList("parallelStopNames"), "tree", "fruits", "vegetables", "leek", "carrot");
+    }
+
+    @Test
+    public void testNonJcrTree() throws Exception {
+        Resource leaf = mockResource("/virtual/tree/leaf");
+        Resource branch = mockResource("/virtual/tree", leaf);
+        Resource root = mockResource("/virtual", branch);
+        TraversePipe pipe = (TraversePipe)getPipe(CONF_ROOT + "default");
+        List<Resource> output = IteratorUtils.toList(pipe.new TraversingIterator(root, ValueMap.EMPTY));
+        assertEquals("should output the listed resources themselves", Arrays.asList(root, branch, leaf), output);
+    }
+
+    Resource mockResource(String path, Resource... children) {
+        Resource resource = mock(Resource.class);
+        when(resource.getPath()).thenReturn(path);
+        when(resource.listChildren()).thenReturn(Arrays.asList(children).iterator());
+        return resource;
+    }
+
     List<Resource> getResourceList(String pipeName){
         Iterator<Resource> output = getOutput(CONF_ROOT + pipeName);
         return IteratorUtils.toList(output);
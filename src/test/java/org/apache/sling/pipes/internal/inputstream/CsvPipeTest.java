@@ -25,8 +25,17 @@ import org.apache.sling.pipes.Pipe;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
@@ -67,4 +76,99 @@ public class CsvPipeTest extends AbstractPipeTest {
         assertEquals(3, results.size());
         assertEquals("{\"items\":[\"/home/apple\",\"/home/banana\",\"/home/plum\"],\"size\":3}", results.toString());
     }
+
+    @Test
+    public void testEscapedSeparator() throws IllegalAccessException {
+        String csv = "fruit\tcolor\napple\tgreen\nbanana\tyellow\n";
+        ExecutionResult results = plumber.newPipe(context.resourceResolver())
+                .csv(csv).with("separator", "\\t").name("item")
+                .mkdir("/content/csv/${item.fruit}").write("color", "${item.color}").run();
+        assertEquals(2, results.size());
+        assertEquals("green", context.resourceResolver().getResource("/content/csv/apple").getValueMap().get("color"));
+        assertEquals('|', CsvTokenizer.toSeparator("\\|"));
+        assertEquals('\\', CsvTokenizer.toSeparator("\\\\"));
+    }
+
+    @Test
+    public void testChunkingAcrossWindows() throws Exception {
+        StringBuilder csv = new StringBuilder("id,label\n");
+        for (int i = 0; i < 200; i++) {
+            csv.append(i).append(i % 3 == 0 ? ",\"quoted\nlabel\"\n" : ",label\n");
+        }
+        Path file = Files.createTempFile("chunker", ".csv");
+        try (FileChannel channel = FileChannel.open(Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8)),
+                StandardOpenOption.READ)) {
+            List<CsvChunker.Chunk> expected = new CsvChunker(channel, ',').split(9, 100);
+            List<CsvChunker.Chunk> windowed = new CsvChunker(channel, ',', 7).split(9, 100);
+            assertEquals(expected.size(), windowed.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).start, windowed.get(i).start);
+                assertEquals(expected.get(i).end, windowed.get(i).end);
+                assertEquals(expected.get(i).firstRecord, windowed.get(i).firstRecord);
+            }
+            assertEquals("chunks should cover the whole file", channel.size(), windowed.get(windowed.size() - 1).end);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedSeparator() {
+        CsvTokenizer.toSeparator("\\d");
+    }
+
+    @Test
+    public void testQuotedFields() throws IllegalAccessException {
+        String csv = "fruit;description\r\napple;\"green; \"\"crisp\"\"\nand sweet\"\r\nbanana;yellow\r\n";
+        ExecutionResult results = plumber.newPipe(context.resourceResolver())
+                .csv(csv).with("separator", ";").name("item")
+                .mkdir("/content/csv/${item.fruit}").write("description", "${item.description}").run();
+        assertEquals(2, results.size());
+        assertEquals("green; \"crisp\"\nand sweet", context.resourceResolver().getResource("/content/csv/apple").getValueMap().get("description"));
+        assertEquals("yellow", context.resourceResolver().getResource("/content/csv/banana").getValueMap().get("description"));
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        int nbRecords = 5000;
+        StringBuilder csv = new StringBuilder("id,label,description\n");
+        for (int i = 0; i < nbRecords; i++) {
+            csv.append(i).append(",label ").append(i).append(',');
+            csv.append(i % 7 == 0 ? "\"multi\nline, \"\"quoted\"\" description\"" : "some plain description of the record");
+            csv.append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        csv.append(" \n");
+        for (int i = nbRecords; i < nbRecords + 10; i++) {
+            csv.append(i).append(",after blank line,should not be read\n");
+        }
+        String csvPath = "/content/test/parallel.csv";
+        context.load().binaryFile(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)), csvPath);
+        Pipe container = plumber.newPipe(context.resourceResolver())
+                .csv(csvPath).with("parallel", true, "numThreads", 4, "spoolThreshold", 0).name("row").build();
+        Pipe pipe = plumber.getPipe(container.getResource().getChild(Pipe.NN_CONF).listChildren().next());
+        Iterator<Resource> output = pipe.getOutput();
+        Set<Long> indexes = new HashSet<>();
+        while (output.hasNext()) {
+            output.next();
+            Map<String, String> row = (Map<String, String>) pipe.getOutputBinding();
+            Long index = (Long) pipe.getBindings().getBindings().get("row_index");
+            assertEquals("index should be record position", row.get("id"), index.toString());
+            if (index % 7 == 0) {
+                assertEquals("multi\nline, \"quoted\" description", row.get("description"));
+            }
+            indexes.add(index);
+        }
+        pipe.after();
+        assertEquals("all records before blank line should be output once", nbRecords, indexes.size());
+        Pipe sequential = plumber.getPipe(plumber.newPipe(context.resourceResolver())
+                .csv(csvPath).name("row").build().getResource().getChild(Pipe.NN_CONF).listChildren().next());
+        output = sequential.getOutput();
+        long count = 0;
+        while (output.hasNext()) {
+            output.next();
+            assertEquals("index should have the same type in both modes", count++,
+                    sequential.getBindings().getBindings().get("row_index"));
+        }
+        assertEquals("sequential mode should stop at the same blank line", nbRecords, count);
+    }
 }
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.pipes.internal.inputstream;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.pipes.AbstractPipeTest;
+import org.apache.sling.pipes.ExecutionResult;
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * testing json lines pipe
+ */
+public class JsonLinesPipeTest extends AbstractPipeTest {
+
+    static final String JSONL = "{\"fruit\":\"apple\",\"color\":\"green\"}\n\n{\"fruit\":\"banana\",\"color\":\"yellow\"}\n";
+
+    @Test
+    public void testRecords() throws IllegalAccessException {
+        ExecutionResult results = plumber.newPipe(context.resourceResolver())
+                .echo("/content")
+                .jsonl(JSONL).name("item")
+                .mkdir("/content/${item.fruit}/${item.color}_${item_index}").run();
+        assertEquals(2, results.size());
+        assertEquals("{\"items\":[\"/content/apple/green_0\",\"/content/banana/yellow_2\"],\"size\":2}", results.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedFails() throws Throwable {
+        Iterator<Resource> output = plumber.newPipe(context.resourceResolver())
+                .jsonl("{\"fruit\":\"apple\"}\n{\"fruit\":").with("skipMalformed", false).build().getOutput();
+        while (output.hasNext()) {
+            output.next();
+        }
+    }
+
+    @Test
+    public void testSkipMalformed() throws IllegalAccessException {
+        ExecutionResult results = plumber.newPipe(context.resourceResolver())
+                .echo("/content")
+                .jsonl("{\"fruit\":\"apple\"}\n{\"fruit\":\n{\"fruit\":\"banana\"}").with("skipMalformed", true).name("item")
+                .mkdir("/content/${item.fruit}").run();
+        assertEquals("malformed line should be skipped", 2, results.size());
+        assertTrue("malformed line should be reported", results.toString().contains("(line 1)"));
+    }
+}
@@ -28,17 +28,25 @@ import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aMultipart;
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.absent;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
 import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.matching;
 import static com.github.tomakehurst.wiremock.client.WireMock.post;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -177,6 +185,119 @@ public class JsonPipeTest extends AbstractPipeTest {
         assertTrue(results.toString().contains("[\"/content/o_0/a_0\",\"/content/o_1/a_0\",\"/content/o_0/a_1\",\"/content/o_1/a_1\"]"));
     }
 
+    @Test
+    public void testStreaming() throws Exception {
+        String json = "{\"size\":2, \"skipped\":{\"items\":[1,2]}, \"items\":[{\"test\":\"one\",\"nested\":[1,{\"n\":null}]}, {\"test\":\"two\"}]}";
+        assertEquals("there should be 2 results", 2, plumber.newPipe(context.resourceResolver())
+                .echo("/content/fruits")
+                .json(json).with("valuePath", "$.items", "streaming", true).name("json")
+                .echo("/content/json/array/${json.test}")
+                .run().size());
+        assertEquals("there should be 2 results", 2, plumber.newPipe(context.resourceResolver())
+                .echo("/content/fruits")
+                .json("[[\"foo\",\"bar\"],[{\"test\":\"one\"}, {\"test\":\"two\"}]]").with("valuePath", "$[1]", "streaming", true).name("json")
+                .echo("/content/json/array/${json.test}")
+                .run().size());
+        assertEquals("missing path should output nothing", 0, plumber.newPipe(context.resourceResolver())
+                .echo("/content/fruits")
+                .json(json).with("valuePath", "$.missing", "streaming", true).name("json")
+                .run().size());
+    }
+
+    @Test
+    public void testStreamingIndex() throws InvocationTargetException, IllegalAccessException {
+        ExecutionResult results = execute("echo /content " +
+                "| json [\"blah\",\"blah\"] @ name dumbArray @ with streaming=true" +
+                "| json {\"foo\":\"blah\",\"bar\":\"blah\"} @ name dumbObject @ with streaming=true" +
+                "| mkdir /content/o_${dumbObject_index}/a_${dumbArray_index}");
+        assertEquals(4, results.size());
+        assertTrue(results.toString().contains("[\"/content/o_0/a_0\",\"/content/o_1/a_0\",\"/content/o_0/a_1\",\"/content/o_1/a_1\"]"));
+    }
+
+    @Test
+    public void testMemoizedRemoteJson() throws IllegalAccessException {
+        http.givenThat(get(urlEqualTo("/get/colors.json"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"apple\":\"green\",\"banana\":\"yellow\"}")));
+        ExecutionResult results = plumber.newPipe(context.resourceResolver())
+                .echo(PATH_FRUITS).children("nt:unstructured").name("fruit")
+                .json(baseUrl + "/get/colors.json").with("raw", true, "memoize", true).name("colors")
+                .write("color", "${colors[name.fruit]}").run();
+        assertEquals(2, results.size());
+        assertEquals("yellow", context.resourceResolver().getResource(PATH_BANANA).getValueMap().get("color"));
+        http.verify(1, getRequestedFor(urlEqualTo("/get/colors.json")));
+        plumber.newPipe(context.resourceResolver())
+                .echo(PATH_FRUITS).children("nt:unstructured").name("fruit")
+                .json(baseUrl + "/get/colors.json").with("raw", true).name("colors")
+                .run();
+        http.verify(3, getRequestedFor(urlEqualTo("/get/colors.json")));
+    }
+
+    @Test
+    public void testMemoizedValuePath() throws IllegalAccessException {
+        http.givenThat(get(urlEqualTo("/get/tastes.json"))
+                .willReturn(aResponse().withStatus(200).withBody("{\"apple\":[\"sour\"],\"banana\":[\"sweet\",\"soft\"]}")));
+        ExecutionResult results = plumber.newPipe(context.resourceResolver())
+                .echo(PATH_FRUITS).children("nt:unstructured").name("fruit")
+                .json(baseUrl + "/get/tastes.json").with("valuePath", "$.${name.fruit}", "memoize", true).name("taste")
+                .run();
+        assertEquals("each fruit should have its own tastes, despite same expression", 3, results.size());
+        http.verify(2, getRequestedFor(urlEqualTo("/get/tastes.json")));
+    }
+
+    @Test
+    public void testGzipRemoteJson() throws IOException, IllegalAccessException {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(gzipped)) {
+            output.write("{\"firstName\":\"John\"}".getBytes(StandardCharsets.UTF_8));
+        }
+        http.givenThat(get(urlEqualTo("/get/gzipped.json")).withHeader("Accept-Encoding", containing("gzip"))
+                .willReturn(aResponse().withStatus(200).withHeader("Content-Encoding", "gzip").withBody(gzipped.toByteArray())));
+        ExecutionResult results = plumber.newPipe(context.resourceResolver())
+                .json(baseUrl + "/get/gzipped.json").with("raw", true).name("profile")
+                .mkdir("/home/${profile.firstName}").run();
+        assertEquals("/home/John", results.getCurrentPathSet().iterator().next());
+    }
+
+    @Test
+    public void testHttpCache() throws IllegalAccessException {
+        String url = "/get/cached-" + UUID.randomUUID() + ".json";
+        http.givenThat(get(urlEqualTo(url)).withHeader("If-None-Match", absent())
+                .willReturn(aResponse().withStatus(200).withHeader("ETag", "\"v1\"").withBody("{\"firstName\":\"John\"}")));
+        http.givenThat(get(urlEqualTo(url)).withHeader("If-None-Match", equalTo("\"v1\""))
+                .willReturn(aResponse().withStatus(304)));
+        for (int i = 0; i < 2; i++) {
+            ExecutionResult results = plumber.newPipe(context.resourceResolver())
+                    .json(baseUrl + url).with("raw", true, "httpCache", true).name("profile")
+                    .mkdir("/home/${profile.firstName}").run();
+            assertEquals("/home/John", results.getCurrentPathSet().iterator().next());
+        }
+        http.verify(2, getRequestedFor(urlEqualTo(url)));
+        http.verify(1, getRequestedFor(urlEqualTo(url)).withHeader("If-None-Match", equalTo("\"v1\"")));
+    }
+
+    @Test
+    public void testHttpCacheSkipsHeaders() throws IllegalAccessException {
+        String url = "/get/private-" + UUID.randomUUID() + ".json";
+        http.givenThat(get(urlEqualTo(url))
+                .willReturn(aResponse().withStatus(200).withHeader("ETag", "\"v1\"").withBody("{\"firstName\":\"John\"}")));
+        for (int i = 0; i < 2; i++) {
+            plumber.newPipe(context.resourceResolver())
+                    .json(baseUrl + url).with("raw", true, "httpCache", true, "header_Authorization", "Bearer secret")
+                    .name("profile").run();
+        }
+        http.verify(0, getRequestedFor(urlEqualTo(url)).withHeader("If-None-Match", equalTo("\"v1\"")));
+    }
+
+    @Test
+    public void testReadTimeout() throws IllegalAccessException {
+        http.givenThat(get(urlEqualTo("/get/slow.json"))
+                .willReturn(aResponse().withStatus(200).withFixedDelay(2000).withBody("{\"firstName\":\"John\"}")));
+        ExecutionResult results = plumber.newPipe(context.resourceResolver())
+                .json(baseUrl + "/get/slow.json").with("raw", true, "readTimeout", 200).name("profile")
+                .mkdir("/home/${profile.firstName}").run();
+        assertEquals("read should time out", 0, results.size());
+    }
+
     @Test
     @Ignore
     public void testAuthentifiedRemoteJson() throws InvocationTargetException, IllegalAccessException {
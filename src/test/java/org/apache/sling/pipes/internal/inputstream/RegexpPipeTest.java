@@ -22,10 +22,12 @@ import org.apache.sling.pipes.AbstractPipeTest;
 import org.apache.sling.pipes.Pipe;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
@@ -124,4 +126,36 @@ public class RegexpPipeTest extends AbstractPipeTest {
         Iterator<Resource> output = pipe.getOutput();
         assertFalse("pipe executed with empty output", output.hasNext());
     }
+
+    List<Object> getMatches(String text, Object... conf) throws Exception {
+        Pipe pipe = plumber.newPipe(context.resourceResolver())
+                .egrep(text).name("match").with(conf).build();
+        Pipe egrep = plumber.getPipe(pipe.getResource().getChild(Pipe.NN_CONF).listChildren().next());
+        List<Object> matches = new ArrayList<>();
+        for (Iterator<Resource> output = egrep.getOutput(); output.hasNext();) {
+            output.next();
+            matches.add(egrep.getOutputBinding());
+        }
+        return matches;
+    }
+
+    @Test
+    public void testStreamingWindow() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append("item-").append(i).append(" some filler text, ");
+        }
+        List<Object> expected = getMatches(text.toString(), "pattern", "item-\\d+");
+        assertEquals("all items should be found", 5000, expected.size());
+        assertEquals("streamed matches should be the same", expected,
+                getMatches(text.toString(), "pattern", "item-\\d+", "streaming", true, "maxMatchLength", 16));
+    }
+
+    @Test
+    public void testStreamingLines() throws Exception {
+        String log = "INFO started\nERROR failed once\nINFO running\nERROR failed twice\n";
+        List<Object> matches = getMatches(log, "pattern", "^ERROR (?<message>.*)$", "streaming", true);
+        assertEquals("there should be 2 errors", 2, matches.size());
+        assertEquals("failed twice", ((Map)matches.get(1)).get("message"));
+    }
 }